@@ -0,0 +1,263 @@
+package com.challenge.tokenizacion_app.audit;
+
+import com.challenge.tokenizacion_app.model.entity.LogEvent;
+import com.challenge.tokenizacion_app.repository.LogEventJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Escritor asíncrono de auditoría con group-commit.
+ * <p>
+ * Los eventos entran a una cola acotada; un hilo dedicado la vacía en lotes JDBC multi-fila
+ * (un commit por lote), disparando por tamaño ({@code batch-size}) o por tiempo
+ * ({@code flush-interval}). Cada lote se escribe en el executor {@code audit} para que el
+ * colector siga armando el siguiente mientras la DB responde. Hay un solo escritor: el colector
+ * no entrega un lote nuevo hasta que termina el anterior, así la auditoría usa a lo sumo una
+ * conexión del pool (Hikari tiene 5 en prod) y no compite con las transacciones cortas del
+ * checkout. Con la cola llena se aplica la política de {@code backpressure}:
+ * <ul>
+ *   <li>BLOCK: el llamador espera hasta que haya espacio.</li>
+ *   <li>DROP: se descarta el evento y se incrementa {@code audit.events.dropped}.</li>
+ *   <li>SYNC: se escribe en línea en una transacción propia.</li>
+ * </ul>
+ * Al apagar la app se drena la cola antes de cerrar el DataSource.
+ */
+@Component
+@Slf4j
+public class AsyncLogEventWriter implements SmartLifecycle {
+
+    public enum Backpressure { BLOCK, DROP, SYNC }
+
+    private final LogEventJdbcRepository jdbcRepository;
+    private final TransactionTemplate tx;
+    private final BlockingQueue<LogEvent> queue;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Backpressure backpressure;
+    private final Executor flushExecutor;
+    private final AtomicInteger flushesInFlight = new AtomicInteger();
+    private final Semaphore writer = new Semaphore(1); // un lote en escritura a la vez
+
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter syncFallback;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public AsyncLogEventWriter(LogEventJdbcRepository jdbcRepository,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Qualifier("auditExecutor") Executor flushExecutor,
+                               @Value("${audit.async.enabled:true}") boolean enabled,
+                               @Value("${audit.async.queue-capacity:10000}") int queueCapacity,
+                               @Value("${audit.async.batch-size:200}") int batchSize,
+                               @Value("${audit.async.flush-interval:200ms}") Duration flushInterval,
+                               @Value("${audit.async.backpressure:SYNC}") Backpressure backpressure) {
+        this.jdbcRepository = jdbcRepository;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = flushInterval;
+        this.backpressure = backpressure;
+        this.flushExecutor = flushExecutor;
+
+        Gauge.builder("audit.queue.depth", queue, BlockingQueue::size)
+                .description("Eventos de auditoría pendientes de escribir")
+                .register(meterRegistry);
+        this.written = Counter.builder("audit.events.written").register(meterRegistry);
+        this.dropped = Counter.builder("audit.events.dropped").register(meterRegistry);
+        this.syncFallback = Counter.builder("audit.events.sync_fallback").register(meterRegistry);
+        this.flushTimer = Timer.builder("audit.flush.latency")
+                .description("Duración de cada lote de auditoría (INSERT + commit)")
+                .register(meterRegistry);
+    }
+
+    /** true si la escritura asíncrona está habilitada y el hilo escritor corre. */
+    public boolean isEnabled() {
+        return enabled && running;
+    }
+
+    public void submit(LogEvent event) {
+        if (!isEnabled()) {
+            writeNow(List.of(event));
+            return;
+        }
+        switch (backpressure) {
+            case BLOCK -> {
+                try {
+                    queue.put(event);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    writeNow(List.of(event));
+                }
+            }
+            case DROP -> {
+                if (!queue.offer(event)) dropped.increment();
+            }
+            case SYNC -> {
+                if (!queue.offer(event)) {
+                    syncFallback.increment();
+                    writeNow(List.of(event));
+                }
+            }
+        }
+    }
+
+    /** Escribe un lote en su propia transacción (REQUIRES_NEW). */
+    void writeNow(List<LogEvent> batch) {
+        if (batch.isEmpty()) return;
+        flushTimer.record(() -> tx.executeWithoutResult(s -> jdbcRepository.insertAll(batch)));
+        written.increment(batch.size());
+    }
+
+    private void runLoop() {
+        List<LogEvent> batch = new ArrayList<>(batchSize);
+        long intervalNanos = flushInterval.toNanos();
+        while (running || !queue.isEmpty()) {
+            try {
+                long deadline = System.nanoTime() + intervalNanos;
+                // Espera el primer evento; luego acumula hasta batchSize o hasta el deadline
+                LogEvent first = queue.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || left <= 0) break;
+                    LogEvent next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drainRemaining(batch);
+                return;
+            }
+        }
+    }
+
+    private void drainRemaining(List<LogEvent> batch) {
+        do {
+            queue.drainTo(batch, batchSize - batch.size());
+            flush(batch);
+        } while (!queue.isEmpty());
+    }
+
+    private void flush(List<LogEvent> batch) {
+        if (batch.isEmpty()) return;
+        List<LogEvent> toWrite = List.copyOf(batch);
+        batch.clear();
+        writer.acquireUninterruptibly(); // espera al lote anterior (acotado por el timeout de la DB)
+        flushesInFlight.incrementAndGet();
+        Runnable write = () -> {
+            try {
+                writeQuietly(toWrite);
+            } finally {
+                flushesInFlight.decrementAndGet();
+                writer.release();
+            }
+        };
+        try {
+            flushExecutor.execute(write);
+        } catch (RejectedExecutionException e) {
+            write.run(); // apagando: lo escribe el colector, sigue habiendo un solo escritor
+        }
+    }
+
+    private void writeQuietly(List<LogEvent> batch) {
+        try {
+            writeNow(batch);
+        } catch (Exception e) {
+            // No reintentamos indefinidamente: se registra y se continúa con el siguiente lote
+            dropped.increment(batch.size());
+            log.warn("No se pudo escribir lote de auditoría ({} eventos): {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /** Espera a que terminen los lotes entregados al executor (máx. 30 s). */
+    private void awaitFlushes() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (flushesInFlight.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        worker = new Thread(this::runLoop, "audit-writer");
+        worker.setDaemon(false);
+        worker.start();
+        log.info("Auditoría asíncrona activa (batch={}, flush={}, backpressure={})",
+                batchSize, flushInterval, backpressure);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        Thread t = worker;
+        if (t != null) {
+            // Sin interrupt: el hilo ve running=false en el siguiente poll y drena la cola
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Por si el hilo terminó antes de ver eventos encolados en la carrera con stop()
+        List<LogEvent> rest = new ArrayList<>(batchSize);
+        drainRemaining(rest);
+        awaitFlushes();
+        log.info("Auditoría asíncrona detenida; cola drenada");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Fase menor que la del servidor web: arranca antes y se detiene después de que terminen
+     * los requests en curso, pero antes de que se cierre el DataSource.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -0,0 +1,79 @@
+package com.challenge.tokenizacion_app.audit;
+
+import com.challenge.tokenizacion_app.repository.LogEventJdbcRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exporta eventos de auditoría como NDJSON (un objeto JSON por línea), opcionalmente gzip,
+ * escribiendo cada fila directo al stream de salida a medida que llega del cursor.
+ * La memoria usada no depende de cuántas filas tenga el rango.
+ */
+@Component
+public class LogEventNdjsonExporter {
+
+    // El stream de salida lo cierra quien lo abrió (servlet), no el generador
+    private static final JsonFactory JSON =
+            new JsonFactory().configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private final LogEventJdbcRepository repository;
+    private final TransactionTemplate readOnlyTx;
+    private final int fetchSize;
+    private final int flushEvery;
+
+    public LogEventNdjsonExporter(LogEventJdbcRepository repository,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${audit.export.fetch-size:1000}") int fetchSize,
+                                  @Value("${audit.export.flush-every:1000}") int flushEvery) {
+        this.repository = repository;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.fetchSize = Math.max(1, fetchSize);
+        this.flushEvery = Math.max(1, flushEvery);
+    }
+
+    /** @return filas escritas */
+    public long export(Long userId, String eventType, LocalDateTime from, LocalDateTime to,
+                       boolean gzip, OutputStream target) throws IOException {
+        OutputStream out = gzip ? new GZIPOutputStream(target, 64 * 1024) : target;
+        long[] rows = {0};
+        try (JsonGenerator gen = JSON.createGenerator(out)) {
+            gen.setRootValueSeparator(null); // separamos con '\n' nosotros
+            // Transacción de solo lectura: PostgreSQL necesita autocommit=false para usar el fetch size
+            readOnlyTx.executeWithoutResult(s -> repository.streamAll(userId, eventType, from, to, fetchSize, rs -> {
+                try {
+                    gen.writeStartObject();
+                    gen.writeStringField("id", rs.getString("id"));
+                    gen.writeStringField("eventType", rs.getString("event_type"));
+                    gen.writeStringField("message", rs.getString("message"));
+                    long uid = rs.getLong("user_id");
+                    if (rs.wasNull()) gen.writeNullField("userId");
+                    else gen.writeNumberField("userId", uid);
+                    Timestamp ts = rs.getTimestamp("timestamp");
+                    if (ts == null) gen.writeNullField("timestamp");
+                    else gen.writeStringField("timestamp", ts.toLocalDateTime().toString());
+                    gen.writeEndObject();
+                    gen.writeRaw('\n');
+                    if (++rows[0] % flushEvery == 0) gen.flush();
+                } catch (IOException e) {
+                    // Cliente desconectado: corta el cursor y libera la conexión
+                    throw new UncheckedIOException(e);
+                }
+            }));
+            gen.flush();
+        }
+        if (gzip) ((GZIPOutputStream) out).finish();
+        return rows[0];
+    }
+}
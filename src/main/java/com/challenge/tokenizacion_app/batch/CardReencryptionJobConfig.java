@@ -0,0 +1,193 @@
+package com.challenge.tokenizacion_app.batch;
+
+import com.challenge.tokenizacion_app.security.crypto.AesGcmKeyRing;
+import com.challenge.tokenizacion_app.security.crypto.CardSecrets;
+import com.challenge.tokenizacion_app.security.crypto.SealedCardRecord;
+import com.challenge.tokenizacion_app.security.token.CardTokenIssuer;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.database.JdbcPagingItemReader;
+import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
+import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Job de re-cifrado online de los datos sensibles de {@code cards} con la clave vigente.
+ * <p>
+ * - Filas en el formato anterior ({@code cvv} / {@code expiry_date} como texto) se migran al
+ *   registro empaquetado {@code secrets} (misma migración que hace {@code Card.revealSecrets()}).
+ * - Registros {@code secrets} sellados con una versión de clave vieja se re-sellan.
+ * - Particiona por rangos de id y procesa cada rango en un hilo distinto.
+ * - Lee con paginación keyset ({@code WHERE id > :ultimo ORDER BY id}); las filas ya vigentes
+ *   se descartan en el processor (la versión de clave va dentro del binario).
+ * - Cada chunk es una transacción corta; el UPDATE es condicional (compare-and-set sobre el
+ *   valor leído), así una escritura concurrente de la app nunca se pisa ni queda bloqueada.
+ * - Reiniciable: el estado del reader (último id) queda en el ExecutionContext de cada partición.
+ */
+@Configuration
+public class CardReencryptionJobConfig {
+
+    public static final String JOB_NAME = "cardReencryptionJob";
+
+    @Value("${crypto.reencrypt.grid-size:4}")
+    private int gridSize;
+
+    @Value("${crypto.reencrypt.chunk-size:200}")
+    private int chunkSize;
+
+    /** Fila tal como está en DB (valores cifrados, formato anterior o registro empaquetado). */
+    public record CardCipherRow(Long id, String token, String cvv, String expiryDate, byte[] secrets) {}
+
+    /** Registro nuevo, con los valores originales para el UPDATE condicional. */
+    public record ReencryptedCard(Long id, String oldCvv, String oldExpiryDate, byte[] oldSecrets, byte[] secrets) {}
+
+    @Bean
+    public Job cardReencryptionJob(JobRepository jobRepository, Step cardReencryptionManagerStep) {
+        return new JobBuilder(JOB_NAME, jobRepository)
+                .start(cardReencryptionManagerStep)
+                .build();
+    }
+
+    @Bean
+    public Step cardReencryptionManagerStep(JobRepository jobRepository,
+                                            Partitioner cardIdRangePartitioner,
+                                            Step cardReencryptionWorkerStep) {
+        // Sin bean de Executor: no queremos que @Async lo tome como ejecutor por defecto
+        SimpleAsyncTaskExecutor workers = new SimpleAsyncTaskExecutor("reencrypt-");
+        workers.setConcurrencyLimit(Math.max(1, gridSize));
+
+        return new StepBuilder("cardReencryptionManagerStep", jobRepository)
+                .partitioner("cardReencryptionWorkerStep", cardIdRangePartitioner)
+                .step(cardReencryptionWorkerStep)
+                .gridSize(Math.max(1, gridSize))
+                .taskExecutor(workers)
+                .build();
+    }
+
+    @Bean
+    public Step cardReencryptionWorkerStep(JobRepository jobRepository,
+                                           PlatformTransactionManager transactionManager,
+                                           JdbcPagingItemReader<CardCipherRow> cardReencryptionReader,
+                                           JdbcBatchItemWriter<ReencryptedCard> cardReencryptionWriter) {
+        return new StepBuilder("cardReencryptionWorkerStep", jobRepository)
+                .<CardCipherRow, ReencryptedCard>chunk(Math.max(1, chunkSize), transactionManager)
+                .reader(cardReencryptionReader)
+                .processor(cardReencryptionProcessor())
+                .writer(cardReencryptionWriter)
+                .build();
+    }
+
+    /** Divide [min(id), max(id)] en gridSize rangos contiguos. */
+    @Bean
+    public Partitioner cardIdRangePartitioner(JdbcTemplate jdbcTemplate) {
+        return grid -> {
+            Map<String, Long> bounds = jdbcTemplate.queryForObject(
+                    "SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM cards",
+                    (rs, i) -> {
+                        Map<String, Long> m = new HashMap<>();
+                        m.put("min", rs.getLong("min_id"));
+                        m.put("max", rs.getLong("max_id"));
+                        return m;
+                    });
+            long min = bounds != null ? bounds.get("min") : 0L;
+            long max = bounds != null ? bounds.get("max") : 0L;
+
+            int parts = Math.max(1, grid);
+            long span = Math.max(1, (max - min + 1 + parts - 1) / parts);
+            Map<String, ExecutionContext> partitions = new HashMap<>();
+            for (int p = 0; p < parts; p++) {
+                long from = min + p * span;
+                long to = (p == parts - 1) ? max : Math.min(max, from + span - 1);
+                ExecutionContext ctx = new ExecutionContext();
+                ctx.putLong("minId", from);
+                ctx.putLong("maxId", to);
+                partitions.put("partition" + p, ctx);
+            }
+            return partitions;
+        };
+    }
+
+    @Bean
+    @StepScope
+    public JdbcPagingItemReader<CardCipherRow> cardReencryptionReader(
+            DataSource dataSource,
+            @Value("#{stepExecutionContext['minId']}") Long minId,
+            @Value("#{stepExecutionContext['maxId']}") Long maxId) {
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("minId", minId);
+        params.put("maxId", maxId);
+
+        return new JdbcPagingItemReaderBuilder<CardCipherRow>()
+                .name("cardReencryptionReader")
+                .dataSource(dataSource)
+                .selectClause("SELECT id, token, token_key, cvv, expiry_date, secrets")
+                .fromClause("FROM cards")
+                .whereClause("WHERE id BETWEEN :minId AND :maxId")
+                .sortKeys(Map.of("id", Order.ASCENDING))
+                .parameterValues(params)
+                .pageSize(Math.max(1, chunkSize))
+                .rowMapper((rs, i) -> {
+                    String token = rs.getString("token");
+                    if (token == null) token = CardTokenIssuer.tokenOf(rs.getBytes("token_key")); // storage=BINARY
+                    return new CardCipherRow(rs.getLong("id"), token,
+                            rs.getString("cvv"), rs.getString("expiry_date"), rs.getBytes("secrets"));
+                })
+                .build();
+    }
+
+    private ItemProcessor<CardCipherRow, ReencryptedCard> cardReencryptionProcessor() {
+        return row -> {
+            CardSecrets plain;
+            if (row.secrets() != null) {
+                SealedCardRecord current = SealedCardRecord.fromDatabase(row.secrets());
+                if (!current.needsReencryption()) return null; // ya vigente: se filtra
+                plain = current.open(row.token());
+            } else if (row.cvv() != null && row.expiryDate() != null) {
+                AesGcmKeyRing ring = AesGcmKeyRing.instance();
+                plain = new CardSecrets(ring.decrypt(row.cvv()), ring.decrypt(row.expiryDate()));
+            } else {
+                return null;
+            }
+            byte[] resealed = SealedCardRecord.seal(plain, row.token()).toBytes();
+            return new ReencryptedCard(row.id(), row.cvv(), row.expiryDate(), row.secrets(), resealed);
+        };
+    }
+
+    @Bean
+    public JdbcBatchItemWriter<ReencryptedCard> cardReencryptionWriter(DataSource dataSource) {
+        return new JdbcBatchItemWriterBuilder<ReencryptedCard>()
+                .dataSource(dataSource)
+                // Compare-and-set sobre lo leído: columnas viejas (migración) o el registro anterior
+                .sql("UPDATE cards SET secrets = ?, cvv = NULL, expiry_date = NULL "
+                        + "WHERE id = ? AND ((secrets IS NULL AND cvv = ? AND expiry_date = ?) OR secrets = ?)")
+                .itemPreparedStatementSetter((item, ps) -> {
+                    ps.setBytes(1, item.secrets());
+                    ps.setLong(2, item.id());
+                    ps.setString(3, item.oldCvv());
+                    ps.setString(4, item.oldExpiryDate());
+                    ps.setBytes(5, item.oldSecrets());
+                })
+                // Si la fila cambió entre lectura y escritura, la app ya la escribió con la clave vigente
+                .assertUpdates(false)
+                .build();
+    }
+}
@@ -0,0 +1,29 @@
+package com.challenge.tokenizacion_app.cache;
+
+import com.challenge.tokenizacion_app.model.entity.Card;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Entity listener de {@link Card}: cualquier borrado o actualización (p.ej. reasignación de
+ * usuario, borrado en cascada desde User) saca el token del {@link CardTokenCache}.
+ * Hibernate lo instancia a través del contenedor de beans de Spring.
+ */
+@Component
+public class CardCacheInvalidationListener {
+
+    private final ObjectProvider<CardTokenCache> cache;
+
+    public CardCacheInvalidationListener(ObjectProvider<CardTokenCache> cache) {
+        this.cache = cache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onChange(Card card) {
+        CardTokenCache c = cache.getIfAvailable();
+        if (c != null) c.invalidate(card.getToken());
+    }
+}
@@ -0,0 +1,209 @@
+package com.challenge.tokenizacion_app.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filtro de Bloom en memoria sobre (userId, huella del PAN) de las tarjetas existentes.
+ * <p>
+ * Antes de tokenizar, {@link #mightContain} descarta sin ir a la DB el caso común (tarjeta nueva):
+ * un "no" es definitivo para lo que esta instancia conoce; un "sí" obliga a consultar el índice.
+ * - Se carga al arrancar con las huellas de la DB (filas anteriores sin huella no cuentan:
+ *   se vuelven a tokenizar una vez) y se reconstruye cada {@code cards.fingerprint.bloom.refresh-interval}
+ *   para incluir tarjetas creadas por otras instancias.
+ * - {@link #add} se llama al insertar, antes del commit: si la transacción se revierte queda
+ *   solo un falso positivo (una consulta de más), nunca un falso negativo.
+ * - Mientras no está listo, o si se desactiva ({@code cards.fingerprint.bloom.enabled}), todo
+ *   "podría existir" y siempre se consulta la DB.
+ * <p>
+ * Tamaño: {@code expected-insertions} y {@code fpp} fijan bits y número de hashes
+ * (~1,2 MB para 1M tarjetas al 1%). Las huellas ya son HMAC uniformes: los índices se derivan
+ * de sus bytes (doble hashing), sin volver a hashear.
+ */
+@Component
+@Slf4j
+public class CardFingerprintFilter implements SmartLifecycle {
+
+    private static final String SELECT_FINGERPRINTS =
+            "SELECT user_id, pan_fingerprint FROM cards WHERE pan_fingerprint IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final Duration refreshInterval;
+
+    private volatile Bits current;
+    private volatile Bits loading; // reconstrucción en curso: recibe también los add()
+    private ScheduledExecutorService loader;
+    private volatile boolean running;
+
+    public CardFingerprintFilter(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${cards.fingerprint.bloom.enabled:true}") boolean enabled,
+                                 @Value("${cards.fingerprint.bloom.expected-insertions:1000000}") long expectedInsertions,
+                                 @Value("${cards.fingerprint.bloom.fpp:0.01}") double fpp,
+                                 @Value("${cards.fingerprint.bloom.refresh-interval:10m}") Duration refreshInterval) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("cards.fingerprint.bloom: expected-insertions >= 1 y 0 < fpp < 1");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.refreshInterval = refreshInterval;
+        Gauge.builder("cards.fingerprint.bloom.entries", this, f -> {
+                    Bits b = f.current;
+                    return b == null ? 0 : b.entries.sum();
+                })
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return current != null;
+    }
+
+    /** false = seguro que no existe (para lo cargado); true = hay que consultar la DB. */
+    public boolean mightContain(long userId, byte[] fingerprint) {
+        Bits bits = current;
+        return bits == null || bits.mightContain(userId, fingerprint);
+    }
+
+    public void add(long userId, byte[] fingerprint) {
+        Bits bits = current;
+        if (bits != null) bits.add(userId, fingerprint);
+        // Con una reconstrucción en curso la huella debe quedar también en la versión nueva
+        Bits next = loading;
+        if (next != null && next != bits) next.add(userId, fingerprint);
+        Bits now = current;
+        if (now != null && now != bits && now != next) now.add(userId, fingerprint);
+    }
+
+    /* ----------------- Carga ----------------- */
+
+    /**
+     * Parte de la versión vigente (las filas aún sin commit no salen en el SELECT y no deben
+     * perderse) y suma las huellas de la DB, incluidas las creadas por otras instancias.
+     */
+    void reload() {
+        Bits next = new Bits(expectedInsertions, fpp);
+        loading = next;
+        try {
+            Bits previous = current;
+            if (previous != null) next.merge(previous);
+            jdbcTemplate.query(SELECT_FINGERPRINTS, rs -> {
+                next.add(rs.getLong(1), rs.getBytes(2));
+            });
+            current = next;
+        } finally {
+            loading = null;
+        }
+    }
+
+    private void reloadQuietly() {
+        try {
+            long t0 = System.nanoTime();
+            boolean first = current == null;
+            reload();
+            if (first) {
+                log.info("Filtro de huellas de tarjeta listo: {} tarjetas en {} ms",
+                        current.entries.sum(), (System.nanoTime() - t0) / 1_000_000);
+            }
+        } catch (Exception e) {
+            log.warn("Fallo cargando el filtro de huellas (se reintenta): {}", e.getMessage());
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        loader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "card-fingerprint-filter");
+            t.setDaemon(true);
+            return t;
+        });
+        // Carga inicial inmediata; mientras tanto se consulta siempre la DB
+        long every = Math.max(1, refreshInterval.toMillis());
+        loader.scheduleWithFixedDelay(this::reloadQuietly, 0, every, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        loader.shutdownNow();
+        current = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Arreglo de bits concurrente (CAS por palabra) con k índices por doble hashing. */
+    static final class Bits {
+        private final AtomicLongArray words;
+        private final long size;
+        private final int hashes;
+        private final LongAdder entries = new LongAdder(); // aproximado (métrica)
+
+        Bits(long expectedInsertions, double fpp) {
+            long m = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (m + 63) >>> 6));
+            this.words = new AtomicLongArray(wordCount);
+            this.size = (long) wordCount << 6;
+            this.hashes = Math.max(1, (int) Math.round((double) size / expectedInsertions * Math.log(2)));
+        }
+
+        void add(long userId, byte[] fingerprint) {
+            ByteBuffer f = ByteBuffer.wrap(fingerprint);
+            long h1 = f.getLong(0) ^ (userId * 0x9E3779B97F4A7C15L);
+            long h2 = f.getLong(8) | 1; // impar: recorre índices distintos
+            for (int i = 0; i < hashes; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, size);
+                int w = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long prev;
+                do {
+                    prev = words.get(w);
+                    if ((prev & mask) != 0) break;
+                } while (!words.compareAndSet(w, prev, prev | mask));
+            }
+            entries.increment();
+        }
+
+        void merge(Bits other) {
+            for (int i = 0; i < words.length(); i++) {
+                long bits = other.words.get(i);
+                if (bits != 0) words.getAndAccumulate(i, bits, (a, b) -> a | b);
+            }
+        }
+
+        boolean mightContain(long userId, byte[] fingerprint) {
+            ByteBuffer f = ByteBuffer.wrap(fingerprint);
+            long h1 = f.getLong(0) ^ (userId * 0x9E3779B97F4A7C15L);
+            long h2 = f.getLong(8) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, size);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.challenge.tokenizacion_app.cache;
+
+import com.challenge.tokenizacion_app.repository.CardRepository;
+import com.challenge.tokenizacion_app.repository.projection.CardOwnership;
+import com.challenge.tokenizacion_app.security.token.CardTokenIssuer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Cache acotado token → (cardId, userId) para autorizar tarjetas en el checkout
+ * sin SELECT de la tarjeta ni descifrado de cvv/expiración.
+ * <p>
+ * Se precarga al tokenizar y se invalida cuando la tarjeta se borra o cambia de dueño
+ * ({@link CardCacheInvalidationListener}). Métricas: {@code cache.gets}, {@code cache.evictions}
+ * con {@code cache=cardTokens} en /actuator/metrics.
+ */
+@Component
+public class CardTokenCache {
+
+    public static final String NAME = "cardTokens";
+
+    private final CardRepository cardRepository;
+    private final CardTokenIssuer tokenIssuer;
+    private final Cache<String, CardOwnership> cache;
+
+    public CardTokenCache(CardRepository cardRepository,
+                          CardTokenIssuer tokenIssuer,
+                          MeterRegistry meterRegistry,
+                          @Value("${cards.token-cache.max-size:100000}") long maxSize,
+                          @Value("${cards.token-cache.ttl:10m}") Duration ttl) {
+        this.cardRepository = cardRepository;
+        this.tokenIssuer = tokenIssuer;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, NAME);
+    }
+
+    /** Resuelve el token; en miss consulta solo la proyección (tokens inexistentes no se cachean). */
+    public Optional<CardOwnership> resolve(String token) {
+        if (token == null || token.isBlank()) return Optional.empty();
+        return Optional.ofNullable(cache.get(token, this::load));
+    }
+
+    // Con tokens binarios una sola búsqueda por token_key; por texto solo hasta migrar las filas viejas
+    // o si el token no es la forma canónica de su clave (esas filas no se migran)
+    private CardOwnership load(String token) {
+        byte[] key = tokenIssuer.keyFor(token);
+        if (key == null) {
+            return cardRepository.findOwnershipByToken(token).orElse(null);
+        }
+        Optional<CardOwnership> found = cardRepository.findOwnershipByTokenKey(key);
+        if (found.isEmpty() && (tokenIssuer.hasLegacyTextRows() || !token.equals(CardTokenIssuer.tokenOf(key)))) {
+            found = cardRepository.findOwnershipByToken(token);
+        }
+        return found.orElse(null);
+    }
+
+    public void put(String token, Long cardId, Long userId) {
+        if (token == null || cardId == null) return;
+        cache.put(token, new CardOwnership(cardId, userId));
+    }
+
+    public void invalidate(String token) {
+        if (token != null) cache.invalidate(token);
+    }
+}
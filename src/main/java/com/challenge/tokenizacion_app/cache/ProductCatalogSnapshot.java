@@ -0,0 +1,297 @@
+package com.challenge.tokenizacion_app.cache;
+
+import com.challenge.tokenizacion_app.inventory.InventoryLedger;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshot inmutable del catálogo visible ({@code stock >= business.min-stock-visible}, orden por
+ * nombre) con la respuesta JSON ya serializada.
+ * <p>
+ * - Lectores: una lectura volátil de la referencia; sin queries, sin entidades y sin Jackson.
+ * - Escritores: {@link #markDirty()} tras el commit de altas de producto o cambios de stock.
+ *   Las marcas se agrupan ({@code catalog.snapshot.rebuild-delay}) y un único hilo reconstruye
+ *   el snapshot con una proyección JDBC y lo publica copy-on-write.
+ * - Cota de staleness: además se reconstruye cada {@code catalog.snapshot.max-staleness}, que
+ *   cubre cambios que no pasan por la app (otra instancia, el flush del ledger, SQL manual).
+ * <p>
+ * Los productos hot se publican con la disponibilidad del {@link InventoryLedger}, no con la
+ * columna (que va en diferido). Métricas: {@code catalog.snapshot.refresh},
+ * {@code catalog.snapshot.age}, {@code catalog.snapshot.size}, {@code catalog.snapshot.refresh.failed}.
+ */
+@Component
+@Slf4j
+public class ProductCatalogSnapshot implements SmartLifecycle {
+
+    /** Producto tal como se publica; mismos campos y nombres que ProductDTO. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Item(Long id, String name, BigDecimal price, Integer stock) {
+        /** Orden del catálogo y clave del keyset: (name, id). Se ordena en Java, no con la collation de la DB. */
+        public static final Comparator<Item> ORDER = Comparator.comparing(Item::name)
+                .thenComparing(Item::id);
+    }
+
+    /**
+     * Versión publicada. El arreglo y los bytes no se modifican nunca después de construirse;
+     * {@link #items()} expone una vista de solo lectura.
+     */
+    public static final class Snapshot {
+        private final Item[] items;
+        private final Map<Long, Item> byId;
+        private final byte[] json;
+        private final long version;
+        private final long builtAtNanos;
+
+        private Snapshot(Item[] items, byte[] json, long version, long builtAtNanos) {
+            this.items = items;
+            Map<Long, Item> index = new HashMap<>(items.length * 2);
+            for (Item it : items) index.put(it.id(), it);
+            this.byId = Collections.unmodifiableMap(index);
+            this.json = json;
+            this.version = version;
+            this.builtAtNanos = builtAtNanos;
+        }
+
+        public List<Item> items() {
+            return Collections.unmodifiableList(Arrays.asList(items));
+        }
+
+        /**
+         * Hasta {@code limit} productos estrictamente posteriores a (afterName, afterId), por
+         * búsqueda binaria sobre el arreglo ordenado; afterName null = desde el inicio.
+         */
+        public List<Item> after(String afterName, long afterId, int limit) {
+            int from = 0;
+            if (afterName != null) {
+                int at = Arrays.binarySearch(items, new Item(afterId, afterName, null, null), Item.ORDER);
+                from = at >= 0 ? at + 1 : -at - 1; // el cursor puede haber desaparecido del catálogo
+            }
+            int to = Math.min(items.length, from + Math.max(0, limit));
+            return from >= to ? List.of() : Collections.unmodifiableList(Arrays.asList(items).subList(from, to));
+        }
+
+        /** Producto visible por id, o null si no existe o está bajo el mínimo de stock. */
+        public Item find(Long id) {
+            return byId.get(id);
+        }
+
+        /** Cuerpo listo para escribir; no modificar. */
+        public byte[] json() {
+            return json;
+        }
+
+        public long version() {
+            return version;
+        }
+
+        public String etag() {
+            return "\"catalog-" + version + "\"";
+        }
+
+        public Duration age() {
+            return Duration.ofNanos(System.nanoTime() - builtAtNanos);
+        }
+    }
+
+    private static final String SELECT_VISIBLE = """
+            SELECT id, name, price, stock
+            FROM products
+            WHERE stock IS NOT NULL AND stock >= ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final InventoryLedger ledger;
+    private final boolean enabled;
+    private final int minStockVisible;
+    private final Duration rebuildDelay;
+    private final Duration maxStaleness;
+
+    private final Timer refreshTimer;
+    private final Counter refreshFailed;
+
+    private volatile Snapshot current;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicLong versions = new AtomicLong();
+    private ScheduledExecutorService refresher;
+    private volatile boolean running;
+
+    public ProductCatalogSnapshot(JdbcTemplate jdbcTemplate,
+                                  ObjectMapper objectMapper,
+                                  InventoryLedger ledger,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${catalog.snapshot.enabled:true}") boolean enabled,
+                                  @Value("${business.min-stock-visible:1}") int minStockVisible,
+                                  @Value("${catalog.snapshot.rebuild-delay:250ms}") Duration rebuildDelay,
+                                  @Value("${catalog.snapshot.max-staleness:30s}") Duration maxStaleness) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.ledger = ledger;
+        this.enabled = enabled;
+        this.minStockVisible = minStockVisible;
+        this.rebuildDelay = rebuildDelay;
+        this.maxStaleness = maxStaleness;
+
+        this.refreshTimer = Timer.builder("catalog.snapshot.refresh")
+                .description("Tiempo de reconstrucción del snapshot del catálogo")
+                .register(meterRegistry);
+        this.refreshFailed = Counter.builder("catalog.snapshot.refresh.failed")
+                .register(meterRegistry);
+        Gauge.builder("catalog.snapshot.age", this, s -> {
+                    Snapshot snap = s.current;
+                    return snap == null ? Double.NaN : snap.age().toMillis() / 1000.0;
+                })
+                .baseUnit("seconds")
+                .description("Antigüedad del snapshot publicado")
+                .register(meterRegistry);
+        Gauge.builder("catalog.snapshot.size", this, s -> {
+                    Snapshot snap = s.current;
+                    return snap == null ? 0 : snap.items.length;
+                })
+                .register(meterRegistry);
+    }
+
+    /**
+     * Snapshot vigente, o null si está deshabilitado ({@code catalog.snapshot.enabled=false}) o aún
+     * no arrancó: el llamador va entonces a la DB. Al apagar se sigue sirviendo el último publicado.
+     */
+    public Snapshot current() {
+        return current;
+    }
+
+    /**
+     * Pide una reconstrucción. Dentro de una transacción se difiere al commit (un rollback no
+     * debe publicar nada); varias marcas dentro de la misma ventana producen una sola reconstrucción.
+     */
+    public void markDirty() {
+        if (!running) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleRefresh();
+                }
+            });
+        } else {
+            scheduleRefresh();
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (!dirty.compareAndSet(false, true)) return; // ya hay una reconstrucción en camino
+        try {
+            refresher.schedule(this::refreshQuietly, rebuildDelay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            dirty.set(false); // apagando: el snapshot ya no se sirve
+        }
+    }
+
+    /** Reconstruye y publica. Solo lo ejecuta el hilo del refresher (o start). */
+    void refresh() {
+        // Se limpia antes de leer: un cambio confirmado durante el SELECT vuelve a marcar
+        dirty.set(false);
+        Snapshot next = refreshTimer.record(this::build);
+        current = next;
+        log.debug("Catálogo publicado: versión {}, {} productos, {} bytes",
+                next.version, next.items.length, next.json.length);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            refreshFailed.increment();
+            log.warn("Fallo reconstruyendo el catálogo (se sigue sirviendo la versión {}): {}",
+                    current == null ? "-" : current.version, e.getMessage());
+        }
+    }
+
+    private Snapshot build() {
+        long builtAt = System.nanoTime();
+        List<Item> rows = jdbcTemplate.query(SELECT_VISIBLE, (rs, i) -> {
+            long id = rs.getLong(1);
+            int stock = rs.getInt(4);
+            if (ledger.isHot(id)) {
+                int live = ledger.available(id);
+                if (live >= 0) stock = live;
+            }
+            return new Item(id, rs.getString(2), rs.getBigDecimal(3), stock);
+        }, minStockVisible);
+
+        // El ledger puede dejar un producto hot por debajo del mínimo antes de que la columna lo refleje
+        Item[] items = rows.stream()
+                .filter(it -> it.stock() >= minStockVisible)
+                .sorted(Item.ORDER)
+                .toArray(Item[]::new);
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(items);
+            return new Snapshot(items, json, versions.incrementAndGet(), builtAt);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el catálogo", e);
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        refresh(); // el primer snapshot se publica antes de recibir tráfico
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-snapshot-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = Math.max(1, maxStaleness.toMillis());
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, every, every, TimeUnit.MILLISECONDS);
+        running = true;
+        log.info("Snapshot de catálogo activo: {} productos (staleness máx. {})",
+                current.items.length, maxStaleness);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        refresher.shutdownNow(); // el último snapshot se conserva mientras terminan los requests
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Arranca después del ledger (lee su disponibilidad) y se detiene antes. */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+}
@@ -1,8 +1,167 @@
 package com.challenge.tokenizacion_app.config;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executors con nombre por tipo de carga, configurables en {@code async.executors.<nombre>.*}:
+ * <ul>
+ *   <li>{@code mail}: entrega de handlers del outbox (SMTP, I/O).</li>
+ *   <li>{@code audit}: escritura en lotes de la auditoría asíncrona; un solo hilo, porque el
+ *       escritor nunca tiene más de un lote en vuelo (una conexión del pool como máximo).</li>
+ *   <li>{@code reporting}: exportes y requests asíncronos de MVC (es el
+ *       {@code applicationTaskExecutor}) y el default de {@code @Async} sin calificador.</li>
+ * </ul>
+ * Cada pool tiene cola acotada, política de rechazo (ABORT | CALLER_RUNS | DISCARD), hilos con
+ * nombre y espera a que terminen las tareas al apagar. Métricas {@code executor.*} con
+ * {@code name=<nombre>} (active, queued, completed, pool.size) más {@code executor.rejected}.
+ * Con {@code virtual-threads=true} el executor usa un virtual thread por tarea (Java 21) limitado
+ * a {@code max-size} tareas concurrentes; pensado para I/O bloqueante como SMTP.
+ */
 @Configuration
 @EnableAsync
-public class AsyncConfig {}
+@Slf4j
+public class AsyncConfig implements AsyncConfigurer {
+
+    public enum Rejection { ABORT, CALLER_RUNS, DISCARD }
+
+    private final Environment env;
+    private final AsyncTaskExecutor defaultExecutor;
+
+    // Sin MeterRegistry aquí: los AsyncConfigurer se crean temprano y lo inicializarían antes
+    // de sus post-processors; se recibe en cada @Bean
+    public AsyncConfig(Environment env,
+                       @Lazy @Qualifier("reportingExecutor") AsyncTaskExecutor defaultExecutor) {
+        this.env = env;
+        this.defaultExecutor = defaultExecutor;
+    }
+
+    @Bean
+    public AsyncTaskExecutor mailExecutor(MeterRegistry meterRegistry) {
+        return build("mail", 4, 8, 500, Rejection.CALLER_RUNS, meterRegistry);
+    }
+
+    @Bean
+    public AsyncTaskExecutor auditExecutor(MeterRegistry meterRegistry) {
+        return build("audit", 1, 1, 2, Rejection.CALLER_RUNS, meterRegistry);
+    }
+
+    /** También es el {@code applicationTaskExecutor} que usa MVC para respuestas asíncronas. */
+    @Bean(name = {"reportingExecutor", "applicationTaskExecutor"})
+    public AsyncTaskExecutor reportingExecutor(MeterRegistry meterRegistry) {
+        return build("reporting", 2, 4, 50, Rejection.ABORT, meterRegistry);
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return defaultExecutor;
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (ex, method, params) ->
+                log.warn("Fallo en @Async {}.{}: {}", method.getDeclaringClass().getSimpleName(),
+                        method.getName(), ex.getMessage());
+    }
+
+    /* ----------------- Construcción ----------------- */
+
+    private AsyncTaskExecutor build(String name, int coreSize, int maxSize, int queueCapacity, Rejection rejection,
+                                    MeterRegistry meterRegistry) {
+        String prefix = "async.executors." + name + ".";
+        int core = env.getProperty(prefix + "core-size", Integer.class, coreSize);
+        int max = Math.max(core, env.getProperty(prefix + "max-size", Integer.class, maxSize));
+        int capacity = env.getProperty(prefix + "queue-capacity", Integer.class, queueCapacity);
+        Rejection policy = env.getProperty(prefix + "rejection", Rejection.class, rejection);
+        Duration await = env.getProperty(prefix + "await-termination", Duration.class, Duration.ofSeconds(30));
+        boolean virtual = env.getProperty(prefix + "virtual-threads", Boolean.class, false);
+
+        if (virtual) {
+            return virtualExecutor(name, max, await, meterRegistry);
+        }
+
+        Counter rejected = Counter.builder("executor.rejected")
+                .tag("name", name)
+                .description("Tareas que encontraron el executor saturado")
+                .register(meterRegistry);
+
+        RejectedExecutionHandler handler = switch (policy) {
+            case ABORT -> new ThreadPoolExecutor.AbortPolicy();
+            case CALLER_RUNS -> new ThreadPoolExecutor.CallerRunsPolicy();
+            case DISCARD -> new ThreadPoolExecutor.DiscardPolicy();
+        };
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(name + "-");
+        executor.setCorePoolSize(core);
+        executor.setMaxPoolSize(max);
+        executor.setQueueCapacity(capacity);
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            rejected.increment();
+            handler.rejectedExecution(task, pool);
+        });
+        // Drenaje ordenado: los componentes drenan sus colas en stop(); se siguen aceptando tareas
+        // hasta que el executor mismo se cierra
+        executor.setAcceptTasksAfterContextClose(true);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationMillis(await.toMillis());
+        executor.initialize();
+
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), name, Tags.empty()).bindTo(meterRegistry);
+        log.info("Executor '{}': core={}, max={}, cola={}, rechazo={}", name, core, max, capacity, policy);
+        return executor;
+    }
+
+    private AsyncTaskExecutor virtualExecutor(String name, int concurrency, Duration await,
+                                              MeterRegistry meterRegistry) {
+        AtomicInteger active = new AtomicInteger();
+        AtomicLong completed = new AtomicLong();
+
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(name + "-vt-");
+        executor.setVirtualThreads(true);
+        // Sin cola: al llegar al límite el llamador espera (backpressure natural)
+        executor.setConcurrencyLimit(concurrency);
+        executor.setTaskTerminationTimeout(await.toMillis());
+        executor.setTaskDecorator(task -> () -> {
+            active.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        });
+
+        Gauge.builder("executor.active", active, AtomicInteger::get)
+                .tag("name", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("executor.completed", completed, AtomicLong::get)
+                .tag("name", name)
+                .register(meterRegistry);
+        log.info("Executor '{}': virtual threads, concurrencia máxima={}", name, concurrency);
+        return executor;
+    }
+}
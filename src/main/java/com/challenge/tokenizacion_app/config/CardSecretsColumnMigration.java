@@ -0,0 +1,52 @@
+package com.challenge.tokenizacion_app.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+
+/**
+ * Permite NULL en {@code cards.cvv} / {@code cards.expiry_date}: las tarjetas nuevas solo
+ * escriben el registro binario {@code cards.secrets} y las migradas vacían las columnas viejas.
+ * <p>
+ * ddl-auto=update agrega {@code secrets} pero no relaja restricciones existentes, así que en
+ * bases ya creadas (PostgreSQL) se hace aquí, una sola vez. En H2 en memoria la tabla nace
+ * con el esquema nuevo.
+ */
+@Component
+@Slf4j
+public class CardSecretsColumnMigration implements InitializingBean {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${crypto.migrate-card-columns:true}")
+    private boolean enabled;
+
+    // Depende del EntityManagerFactory para correr después del ddl-auto de Hibernate
+    public CardSecretsColumnMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) return;
+        for (String column : new String[]{"cvv", "expiry_date"}) {
+            String[] product = new String[1];
+            String nullable = jdbcTemplate.execute((java.sql.Connection con) -> {
+                DatabaseMetaData md = con.getMetaData();
+                product[0] = md.getDatabaseProductName();
+                try (ResultSet rs = md.getColumns(null, null, "cards", column)) {
+                    return rs.next() ? rs.getString("IS_NULLABLE") : null;
+                }
+            });
+            if (!"PostgreSQL".equalsIgnoreCase(product[0]) || !"NO".equals(nullable)) continue;
+            jdbcTemplate.execute("ALTER TABLE cards ALTER COLUMN " + column + " DROP NOT NULL");
+            log.info("cards.{} ahora admite NULL (formato anterior al registro secrets)", column);
+        }
+    }
+}
@@ -14,6 +14,9 @@ public class CryptoKeyBootstrap implements ApplicationRunner {
     @Value("${crypto.aes-gcm.key-base64:}")
     private String keyB64;
 
+    @Value("${crypto.aes-gcm.keys:}")
+    private String extraKeys;
+
     @Override
     public void run(ApplicationArguments args) {
         if (keyB64 != null && !keyB64.isBlank()) {
@@ -22,5 +25,9 @@ public class CryptoKeyBootstrap implements ApplicationRunner {
         } else {
             log.warn("AES_GCM_KEY_BASE64 NO establecida. Configúrala por ENV o en application.yml (solo DEV).");
         }
+        if (extraKeys != null && !extraKeys.isBlank()) {
+            System.setProperty("AES_GCM_KEYS", extraKeys);  // claves rotadas v2, v3, ...
+            log.info("AES_GCM_KEYS inicializadas desde application.yml");
+        }
     }
 }
@@ -0,0 +1,53 @@
+package com.challenge.tokenizacion_app.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+
+/**
+ * Migra {@code logs.id} de VARCHAR(255) (UUID v4 en texto) a {@code uuid} nativo.
+ * <p>
+ * ddl-auto=update no cambia tipos de columna, así que en bases existentes (PostgreSQL) se
+ * hace aquí, una sola vez y antes de que arranque el escritor de auditoría. Los UUID v4 ya
+ * guardados se convierten sin pérdida; los nuevos son UUIDv7. En H2 en memoria la tabla
+ * nace con el tipo correcto y no hay nada que hacer.
+ */
+@Component
+@Slf4j
+public class LogsIdColumnMigration implements InitializingBean {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${audit.migrate-id-column:true}")
+    private boolean enabled;
+
+    // Depende del EntityManagerFactory para correr después del ddl-auto de Hibernate
+    public LogsIdColumnMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) return;
+        String[] product = new String[1];
+        String type = jdbcTemplate.execute((java.sql.Connection con) -> {
+            DatabaseMetaData md = con.getMetaData();
+            product[0] = md.getDatabaseProductName();
+            try (ResultSet rs = md.getColumns(null, null, "logs", "id")) {
+                return rs.next() ? rs.getString("TYPE_NAME") : null;
+            }
+        });
+        if (type == null || !"PostgreSQL".equalsIgnoreCase(product[0])) return;
+        if (type.toLowerCase().contains("char")) {
+            log.info("Migrando logs.id de {} a uuid...", type);
+            jdbcTemplate.execute("ALTER TABLE logs ALTER COLUMN id TYPE uuid USING id::uuid");
+            log.info("logs.id migrado a uuid");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.challenge.tokenizacion_app.config;
+
+import com.challenge.tokenizacion_app.security.token.FormatPreservingTokenGenerator;
+import com.challenge.tokenizacion_app.security.token.TokenGenerator;
+import com.challenge.tokenizacion_app.security.token.UuidTokenGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Generador de tokens según {@code tokenization.token.format}:
+ * {@code UUID} (por defecto, 36 caracteres) o {@code FORMAT_PRESERVING} (mismo largo y últimos 4
+ * del PAN). Para otro formato, declarar un bean {@link TokenGenerator} con {@code @Primary}.
+ */
+@Configuration
+public class TokenizationConfig {
+
+    public enum Format { UUID, FORMAT_PRESERVING }
+
+    @Bean
+    public TokenGenerator tokenGenerator(@Value("${tokenization.token.format:UUID}") Format format) {
+        return switch (format) {
+            case UUID -> new UuidTokenGenerator();
+            case FORMAT_PRESERVING -> new FormatPreservingTokenGenerator();
+        };
+    }
+}
@@ -1,11 +1,18 @@
 package com.challenge.tokenizacion_app.controller;
 
+import com.challenge.tokenizacion_app.dto.BatchTokenizeResultDTO;
 import com.challenge.tokenizacion_app.dto.CardDTO;
+import com.challenge.tokenizacion_app.dto.CursorPageDTO;
+import com.challenge.tokenizacion_app.dto.TokenizeCardRequest;
+import com.challenge.tokenizacion_app.idempotency.IdempotencyStore;
+import com.challenge.tokenizacion_app.security.crypto.PanFingerprinter;
 import com.challenge.tokenizacion_app.service.CardService;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 
 @RestController
@@ -14,18 +21,42 @@ public class CardController {
 
     private final CardService cardService;
 
-    public CardController(CardService cardService) { // ← Constructor explícito
+    private final IdempotencyStore idempotencyStore;
+
+    private final PanFingerprinter panFingerprinter;
+
+    public CardController(CardService cardService, IdempotencyStore idempotencyStore,
+                          PanFingerprinter panFingerprinter) { // ← Constructor explícito
         this.cardService = cardService;
+        this.idempotencyStore = idempotencyStore;
+        this.panFingerprinter = panFingerprinter;
     }
 
     @PostMapping("/tokenize")
-    public ResponseEntity<CardDTO> tokenizeCard(@RequestParam Long userId,
-                                                @Valid @RequestBody CardDTO cardDTO) {
-        return ResponseEntity.ok(cardService.tokenizeCard(userId, cardDTO));
+    public ResponseEntity<?> tokenizeCard(@RequestParam Long userId,
+                                          @Valid @RequestBody CardDTO cardDTO,
+                                          @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        // La huella se guarda en idempotency_keys todo el TTL: nunca PAN ni CVV, solo el HMAC con clave del PAN
+        return idempotencyStore.execute("cards.tokenize", idempotencyKey,
+                Arrays.asList(userId, panHmac(cardDTO.getNumber()), cardDTO.getExpiryDate()),
+                () -> ResponseEntity.ok(cardService.tokenizeCard(userId, cardDTO)));
+    }
+
+    private String panHmac(String number) {
+        if (number == null) return null;
+        return Base64.getEncoder().withoutPadding().encodeToString(panFingerprinter.fingerprint(number.trim()));
+    }
+
+    @PostMapping("/tokenize/batch")
+    public ResponseEntity<List<BatchTokenizeResultDTO>> tokenizeBatch(@RequestBody List<TokenizeCardRequest> requests) {
+        return ResponseEntity.ok(cardService.tokenizeBatch(requests));
     }
 
+    // Paginación keyset: envía el nextCursor recibido para la siguiente página
     @GetMapping("/user/{userId}")
-    public ResponseEntity<List<CardDTO>> getCardsByUser(@PathVariable Long userId) {
-        return ResponseEntity.ok(cardService.getCardsByUser(userId));
+    public ResponseEntity<CursorPageDTO<CardDTO>> getCardsByUser(@PathVariable Long userId,
+                                                                 @RequestParam(required = false) String cursor,
+                                                                 @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(cardService.getCardsByUser(userId, cursor, limit));
     }
 }
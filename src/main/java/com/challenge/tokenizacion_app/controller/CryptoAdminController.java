@@ -0,0 +1,26 @@
+package com.challenge.tokenizacion_app.controller;
+
+import com.challenge.tokenizacion_app.dto.ReencryptionStatusDTO;
+import com.challenge.tokenizacion_app.service.CardReencryptionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/crypto")
+@RequiredArgsConstructor
+public class CryptoAdminController {
+
+    private final CardReencryptionService reencryptionService;
+
+    // Lanza (o reinicia) el re-cifrado con la clave vigente
+    @PostMapping("/reencrypt")
+    public ResponseEntity<ReencryptionStatusDTO> reencrypt() throws Exception {
+        return ResponseEntity.accepted().body(reencryptionService.start());
+    }
+
+    @GetMapping("/reencrypt/{executionId}")
+    public ResponseEntity<ReencryptionStatusDTO> status(@PathVariable Long executionId) {
+        return ResponseEntity.ok(reencryptionService.status(executionId));
+    }
+}
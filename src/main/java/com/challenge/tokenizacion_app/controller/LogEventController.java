@@ -1,26 +1,57 @@
 package com.challenge.tokenizacion_app.controller;
 
+import com.challenge.tokenizacion_app.audit.LogEventNdjsonExporter;
+import com.challenge.tokenizacion_app.dto.CursorPageDTO;
 import com.challenge.tokenizacion_app.model.entity.LogEvent;
-import com.challenge.tokenizacion_app.repository.LogEventRepository;
+import com.challenge.tokenizacion_app.service.LogEventService;
 import lombok.*;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.time.LocalDateTime;
 
 @RestController
 @RequestMapping("/api/logs")
 @RequiredArgsConstructor
 public class LogEventController {
 
-    private final LogEventRepository logEventRepository;
+    private final LogEventService logEventService;
+    private final LogEventNdjsonExporter exporter;
 
+    // Filtros opcionales + paginación keyset: envía el nextCursor recibido para la siguiente página
     @GetMapping
-    public List<LogEvent> getAllLogs() {
-        return logEventRepository.findAll();
+    public ResponseEntity<CursorPageDTO<LogEvent>> getLogs(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String eventType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(logEventService.search(userId, eventType, from, to, cursor, limit));
     }
-}
 
+    // Export completo del rango en NDJSON (opcional gzip), en streaming y con memoria constante
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String eventType,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        String type = (eventType == null || eventType.isBlank()) ? null : eventType;
+        StreamingResponseBody body = out -> exporter.export(userId, type, from, to, gzip, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"audit.ndjson" + (gzip ? ".gz" : "") + "\"")
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip")
+                        : MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+}
@@ -2,7 +2,9 @@ package com.challenge.tokenizacion_app.controller;
 
 import com.challenge.tokenizacion_app.dto.OrderDTO;
 import com.challenge.tokenizacion_app.dto.OrderRequestDTO;
+import com.challenge.tokenizacion_app.idempotency.IdempotencyStore;
 import com.challenge.tokenizacion_app.service.OrderService;
+import com.challenge.tokenizacion_app.service.OrderSubmissionService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -11,6 +13,10 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
 @RestController
 @RequestMapping("/api/orders")
 @RequiredArgsConstructor
@@ -18,13 +24,35 @@ import org.springframework.web.bind.annotation.*;
 public class OrderController {
 
     private final OrderService orderService;
+    private final OrderSubmissionService orderSubmissionService;
+    private final IdempotencyStore idempotencyStore;
 
     @PostMapping
-    public ResponseEntity<OrderDTO> createOrder(@RequestParam @NotNull Long userId,
-                                                @RequestParam @NotBlank String address,
-                                                @RequestBody(required = false) @Valid OrderRequestDTO request) {
+    public ResponseEntity<?> createOrder(@RequestParam @NotNull Long userId,
+                                         @RequestParam @NotBlank String address,
+                                         @RequestParam(defaultValue = "false") boolean async,
+                                         @RequestBody(required = false) @Valid OrderRequestDTO request,
+                                         @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        // Productos ordenados por id: el mismo carrito produce siempre la misma huella
+        Map<Long, Integer> products = request != null && request.getProducts() != null
+                ? new TreeMap<>(request.getProducts()) : null;
+        return idempotencyStore.execute("orders.create", idempotencyKey,
+                Arrays.asList(userId, address, async, request != null ? request.getCardToken() : null, products),
+                () -> submitOrder(userId, address, async, request));
+    }
+
+    private ResponseEntity<OrderDTO> submitOrder(Long userId, String address, boolean async, OrderRequestDTO request) {
         String cardToken = request != null ? request.getCardToken() : null;
 
+        if (async) {
+            // 202 + polling en /{id}/status; si se procesó en línea (fallback) se devuelve 200
+            OrderDTO dto = orderSubmissionService.submit(userId, cardToken, address,
+                    request != null ? request.getProducts() : null);
+            return "PENDING".equals(dto.getStatus())
+                    ? ResponseEntity.accepted().body(dto)
+                    : ResponseEntity.ok(dto);
+        }
+
         if (request == null || request.getProducts() == null || request.getProducts().isEmpty()) {
             if (cardToken == null || cardToken.isBlank()) {
                 throw new IllegalArgumentException("cardToken es requerido");
@@ -33,4 +61,9 @@ public class OrderController {
         }
         return ResponseEntity.ok(orderService.createOrder(userId, cardToken, address, request.getProducts()));
     }
+
+    @GetMapping("/{id}/status")
+    public ResponseEntity<OrderDTO> status(@PathVariable Long id) {
+        return ResponseEntity.ok(orderService.status(id));
+    }
 }
@@ -1,8 +1,13 @@
 package com.challenge.tokenizacion_app.controller;
 
+import com.challenge.tokenizacion_app.cache.ProductCatalogSnapshot;
 import com.challenge.tokenizacion_app.dto.ProductDTO;
 import com.challenge.tokenizacion_app.service.ProductService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,19 +19,46 @@ import java.util.List;
 public class ProductController {
 
     private final ProductService productService;
+    private final ProductCatalogSnapshot catalog;
 
     @PostMapping
     public ResponseEntity<ProductDTO> createProduct(@RequestBody ProductDTO productDTO) {
         return ResponseEntity.ok(productService.createProduct(productDTO));
     }
 
+    // Ordenado por relevancia; el total de coincidencias va en X-Total-Count
     @GetMapping("/search")
-    public ResponseEntity<List<ProductDTO>> searchProducts(@RequestParam String name) {
-        return ResponseEntity.ok(productService.searchProducts(name));
+    public ResponseEntity<List<ProductDTO>> searchProducts(@RequestParam String name,
+                                                           @RequestParam(defaultValue = "0") int page,
+                                                           @RequestParam(defaultValue = "20") int size) {
+        Page<ProductDTO> result = productService.searchProducts(name, page, size);
+        return ResponseEntity.ok()
+                .header("X-Total-Count", String.valueOf(result.getTotalElements()))
+                .body(result.getContent());
     }
 
+    // Sin cursor/limit: bytes pre-serializados del snapshot (sin query ni Jackson), ETag = versión;
+    // con el snapshot deshabilitado, la lista se lee de la DB como antes.
+    // Con cursor o limit: página keyset (name, id) con nextCursor.
     @GetMapping
-    public ResponseEntity<List<ProductDTO>> getAll() {
-        return ResponseEntity.ok(productService.listAllProducts());
+    public ResponseEntity<?> getAll(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        if (cursor != null || limit != null) {
+            return ResponseEntity.ok(productService.listProducts(cursor, limit == null ? 50 : limit));
+        }
+        ProductCatalogSnapshot.Snapshot snapshot = catalog.current();
+        if (snapshot == null) {
+            return ResponseEntity.ok(productService.listAllProducts());
+        }
+        if (snapshot.etag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.etag()).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(snapshot.json());
     }
 }
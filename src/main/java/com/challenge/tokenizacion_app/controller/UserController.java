@@ -1,5 +1,6 @@
 package com.challenge.tokenizacion_app.controller;
 
+import com.challenge.tokenizacion_app.dto.CursorPageDTO;
 import com.challenge.tokenizacion_app.dto.UserDTO;
 import com.challenge.tokenizacion_app.model.entity.User;
 import com.challenge.tokenizacion_app.service.UserService;
@@ -7,8 +8,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/api/users")
 @RequiredArgsConstructor
@@ -21,8 +20,10 @@ public class UserController {
         return ResponseEntity.ok(userService.createUser(dto));
     }
 
+    // Paginación keyset: envía el nextCursor recibido para la siguiente página
     @GetMapping
-    public ResponseEntity<List<UserDTO>> getAllUsers() {
-        return ResponseEntity.ok(userService.getAllUsers());
+    public ResponseEntity<CursorPageDTO<UserDTO>> getUsers(@RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(userService.getUsers(cursor, limit));
     }
 }
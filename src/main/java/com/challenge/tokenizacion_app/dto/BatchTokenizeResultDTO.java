@@ -0,0 +1,22 @@
+package com.challenge.tokenizacion_app.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+/**
+ * Resultado por ítem de la tokenización masiva: token o motivo de rechazo.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchTokenizeResultDTO {
+
+    public static final String TOKENIZED = "TOKENIZED";
+    public static final String REJECTED = "REJECTED";
+
+    private int index;          // posición en el arreglo de entrada
+    private Long userId;
+    private String status;      // TOKENIZED | REJECTED
+    private String token;
+    private String maskedNumber;
+    private String reason;      // solo si REJECTED
+}
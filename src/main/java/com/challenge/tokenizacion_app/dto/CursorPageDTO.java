@@ -0,0 +1,18 @@
+package com.challenge.tokenizacion_app.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Página por keyset (seek): sin COUNT ni OFFSET, así que la página N cuesta lo mismo que la 1.
+ * {@code nextCursor} es opaco; se envía tal cual en el siguiente request.
+ */
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CursorPageDTO<T> {
+    private List<T> items;
+    private boolean hasMore;
+    private String nextCursor;
+}
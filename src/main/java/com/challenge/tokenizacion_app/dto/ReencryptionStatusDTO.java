@@ -0,0 +1,19 @@
+package com.challenge.tokenizacion_app.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReencryptionStatusDTO {
+    private Long executionId;
+    private String status;        // STARTING | STARTED | COMPLETED | FAILED | ...
+    private String targetPrefix;  // versión de clave destino, p.ej. "v2:"
+    private long read;
+    private long written;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+}
@@ -2,12 +2,32 @@ package com.challenge.tokenizacion_app.events;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.List;
 
+/**
+ * Orden finalizada (APPROVED/REJECTED). Viaja por el outbox como JSON y lleva un snapshot
+ * completo de la orden (dirección, ítems con precio unitario) para que los handlers no tengan
+ * que recargarla.
+ */
 public record OrderFinalizedEvent(
         Long orderId,
         Long userId,
         String userEmail,
         String status,
         int attempts,
-        BigDecimal total
-) implements Serializable {}
+        BigDecimal total,
+        String deliveryAddress,
+        List<Item> items
+) implements Serializable {
+
+    public static final String TYPE = "ORDER_FINALIZED";
+
+    /** Línea de la orden con el precio congelado al momento de la compra. */
+    public record Item(Long productId, String productName, int quantity, BigDecimal unitPrice)
+            implements Serializable {
+
+        public BigDecimal subtotal() {
+            return unitPrice == null ? BigDecimal.ZERO : unitPrice.multiply(BigDecimal.valueOf(quantity));
+        }
+    }
+}
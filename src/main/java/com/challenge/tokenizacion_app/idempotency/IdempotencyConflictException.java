@@ -0,0 +1,9 @@
+package com.challenge.tokenizacion_app.idempotency;
+
+/** La llave está siendo procesada (en otra instancia o más allá del tiempo de espera) → 409. */
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package com.challenge.tokenizacion_app.idempotency;
+
+/** La llave ya se usó con otros parámetros → 422. */
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    public IdempotencyKeyMismatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,349 @@
+package com.challenge.tokenizacion_app.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Soporte de {@code Idempotency-Key} para endpoints que crean recursos.
+ * <p>
+ * Dos niveles:
+ * <ul>
+ *   <li>L1: LRU acotado en memoria (Caffeine) con las respuestas completadas.</li>
+ *   <li>L2: tabla {@code idempotency_keys} con TTL; sobrevive reinicios y se comparte entre
+ *       instancias. Se reclama la llave con un INSERT IN_PROGRESS antes de ejecutar.</li>
+ * </ul>
+ * Un replay devuelve el status y el cuerpo guardados sin llamar al servicio. Los duplicados
+ * concurrentes en la misma instancia esperan el resultado de la primera ejecución; en otra
+ * instancia reciben 409 mientras la llave esté IN_PROGRESS. Si la acción falla, la llave se
+ * libera y el cliente puede reintentar. Si se aplicó pero su respuesta no se puede guardar, la
+ * llave igual queda COMPLETED (con {@link #UNSTORED_BODY}): nunca IN_PROGRESS tras aplicar la acción.
+ */
+@Component
+@Slf4j
+public class IdempotencyStore implements SmartLifecycle {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    public static final String CACHE_NAME = "idempotency";
+
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final String COMPLETED = "COMPLETED";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final int MAX_BODY_LENGTH = 8192;
+    /** Cuerpo que se guarda (y se repite) cuando la respuesta real no se puede serializar o excede el límite. */
+    static final String UNSTORED_BODY =
+            "{\"message\":\"La operación ya se aplicó, pero su respuesta no se guardó para repetirla.\"}";
+
+    /** Respuesta completada (lo que se repite en cada replay). */
+    record StoredResponse(String fingerprint, int status, String body) {}
+
+    private record InFlight(String fingerprint, CompletableFuture<StoredResponse> result) {}
+
+    private record Row(String fingerprint, String status, Integer httpStatus, String body,
+                       LocalDateTime createdAt, LocalDateTime expiresAt) {}
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, StoredResponse> cache;
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Duration inProgressTimeout;
+    private final Duration waitTimeout;
+    private final Duration purgeInterval;
+
+    private final Counter replayed;
+    private final Counter waited;
+
+    private volatile boolean running;
+    private ScheduledExecutorService purger;
+
+    public IdempotencyStore(JdbcTemplate jdbc,
+                            ObjectMapper objectMapper,
+                            MeterRegistry meterRegistry,
+                            @Value("${idempotency.cache.max-size:50000}") long maxSize,
+                            @Value("${idempotency.ttl:24h}") Duration ttl,
+                            @Value("${idempotency.in-progress-timeout:2m}") Duration inProgressTimeout,
+                            @Value("${idempotency.wait-timeout:30s}") Duration waitTimeout,
+                            @Value("${idempotency.purge-interval:10m}") Duration purgeInterval) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.inProgressTimeout = inProgressTimeout;
+        this.waitTimeout = waitTimeout;
+        this.purgeInterval = purgeInterval;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        this.replayed = Counter.builder("idempotency.replayed").register(meterRegistry);
+        this.waited = Counter.builder("idempotency.waited").register(meterRegistry);
+    }
+
+    /**
+     * Ejecuta {@code action} una sola vez por {@code scope + key}. Sin llave se ejecuta directo.
+     *
+     * @param fingerprint valores que identifican el request (se comparan por hash en cada replay).
+     *                    El hash (SHA-256 sin clave) se guarda en la DB: nunca incluir PAN ni CVV en
+     *                    claro, que se recuperan por fuerza bruta; usar su HMAC con clave.
+     */
+    public ResponseEntity<?> execute(String scope, String key, List<?> fingerprint,
+                                     Supplier<? extends ResponseEntity<?>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " debe tener entre 1 y " + MAX_KEY_LENGTH + " caracteres");
+        }
+        String id = scope + ":" + key;
+        String fp = hash(fingerprint);
+
+        StoredResponse hit = cache.getIfPresent(id);
+        if (hit != null) {
+            return replay(hit, fp);
+        }
+
+        InFlight mine = new InFlight(fp, new CompletableFuture<>());
+        InFlight current = inFlight.putIfAbsent(id, mine);
+        if (current != null) {
+            // Duplicado concurrente: espera el resultado de la ejecución en curso
+            checkFingerprint(current.fingerprint(), fp);
+            waited.increment();
+            return replay(await(current), fp);
+        }
+
+        try {
+            StoredResponse previous = claim(id, fp);
+            if (previous != null) {
+                cache.put(id, previous);
+                mine.result().complete(previous);
+                return replay(previous, fp);
+            }
+
+            ResponseEntity<?> response;
+            try {
+                response = action.get();
+            } catch (RuntimeException e) {
+                release(id);
+                throw e;
+            }
+
+            // La acción ya se aplicó: a partir de aquí ninguna falla puede dejar la llave IN_PROGRESS
+            StoredResponse stored;
+            try {
+                stored = new StoredResponse(fp, response.getStatusCode().value(), toJson(response.getBody()));
+            } catch (RuntimeException e) {
+                log.warn("Respuesta idempotente {} no guardable, se guarda un marcador: {}", id, e.getMessage());
+                stored = new StoredResponse(fp, response.getStatusCode().value(), UNSTORED_BODY);
+            }
+            cache.put(id, stored);
+            mine.result().complete(stored);
+            try {
+                complete(id, stored);
+            } catch (RuntimeException e) {
+                // La acción ya se aplicó: se responde igual; el replay queda cubierto por L1
+                log.warn("No se pudo persistir la respuesta idempotente {}: {}", id, e.getMessage());
+            }
+            return response;
+        } catch (RuntimeException e) {
+            mine.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String fingerprint) {
+        checkFingerprint(stored.fingerprint(), fingerprint);
+        replayed.increment();
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.status()).header(REPLAYED_HEADER, "true");
+        if (stored.body() == null) {
+            return builder.build();
+        }
+        try {
+            return builder.body(objectMapper.readTree(stored.body()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Respuesta idempotente corrupta", e);
+        }
+    }
+
+    private static void checkFingerprint(String stored, String actual) {
+        if (!stored.equals(actual)) {
+            throw new IdempotencyKeyMismatchException(
+                    "La " + HEADER + " ya se usó con otros parámetros; usa una llave nueva.");
+        }
+    }
+
+    private StoredResponse await(InFlight current) {
+        try {
+            return current.result().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // El primero falló: los duplicados reciben el mismo error
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IdempotencyConflictException("La solicitud con esta " + HEADER + " sigue en proceso.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyConflictException("La solicitud con esta " + HEADER + " sigue en proceso.");
+        }
+    }
+
+    /* ----------------- Nivel persistente ----------------- */
+
+    /**
+     * Reclama la llave con un INSERT IN_PROGRESS. Devuelve la respuesta guardada si la llave ya
+     * estaba completada, o null si este hilo debe ejecutar la acción.
+     */
+    private StoredResponse claim(String id, String fingerprint) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                jdbc.update("""
+                        INSERT INTO idempotency_keys (idem_key, fingerprint, status, created_at, expires_at)
+                        VALUES (?, ?, ?, ?, ?)
+                        """, id, fingerprint, IN_PROGRESS, Timestamp.valueOf(now), Timestamp.valueOf(now.plus(ttl)));
+                return null;
+            } catch (DuplicateKeyException e) {
+                Row row = find(id);
+                if (row == null) continue; // se borró entre el INSERT y el SELECT
+
+                boolean expired = row.expiresAt().isBefore(now);
+                boolean abandoned = IN_PROGRESS.equals(row.status())
+                        && row.createdAt().isBefore(now.minus(inProgressTimeout));
+                if (expired || abandoned) {
+                    // Llave vencida o de una ejecución que murió: se libera y se vuelve a reclamar
+                    jdbc.update("DELETE FROM idempotency_keys WHERE idem_key = ? AND created_at = ?",
+                            id, Timestamp.valueOf(row.createdAt()));
+                    continue;
+                }
+                if (COMPLETED.equals(row.status())) {
+                    return new StoredResponse(row.fingerprint(), row.httpStatus(), row.body());
+                }
+                checkFingerprint(row.fingerprint(), fingerprint);
+                throw new IdempotencyConflictException("La solicitud con esta " + HEADER + " sigue en proceso.");
+            }
+        }
+        throw new IdempotencyConflictException("La solicitud con esta " + HEADER + " sigue en proceso.");
+    }
+
+    private Row find(String id) {
+        List<Row> rows = jdbc.query("""
+                SELECT fingerprint, status, http_status, response_body, created_at, expires_at
+                FROM idempotency_keys
+                WHERE idem_key = ?
+                """, (rs, i) -> new Row(
+                rs.getString("fingerprint"),
+                rs.getString("status"),
+                rs.getObject("http_status", Integer.class),
+                rs.getString("response_body"),
+                rs.getTimestamp("created_at").toLocalDateTime(),
+                rs.getTimestamp("expires_at").toLocalDateTime()), id);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private void complete(String id, StoredResponse stored) {
+        jdbc.update("""
+                UPDATE idempotency_keys
+                SET status = ?, http_status = ?, response_body = ?
+                WHERE idem_key = ?
+                """, COMPLETED, stored.status(), stored.body(), id);
+    }
+
+    private void release(String id) {
+        try {
+            jdbc.update("DELETE FROM idempotency_keys WHERE idem_key = ? AND status = ?", id, IN_PROGRESS);
+        } catch (RuntimeException e) {
+            // Si no se puede borrar, la llave queda libre al vencer in-progress-timeout
+            log.warn("No se pudo liberar la llave idempotente {}: {}", id, e.getMessage());
+        }
+    }
+
+    void purgeExpired() {
+        try {
+            int deleted = jdbc.update("DELETE FROM idempotency_keys WHERE expires_at < ?",
+                    Timestamp.valueOf(LocalDateTime.now()));
+            if (deleted > 0) log.debug("Llaves idempotentes vencidas borradas: {}", deleted);
+        } catch (RuntimeException e) {
+            log.warn("Falló la purga de llaves idempotentes: {}", e.getMessage());
+        }
+    }
+
+    /* ----------------- Helpers ----------------- */
+
+    private String toJson(Object body) {
+        if (body == null) return null;
+        try {
+            String json = objectMapper.writeValueAsString(body);
+            if (json.length() > MAX_BODY_LENGTH) {
+                throw new IllegalStateException("Respuesta demasiado grande para guardarse como idempotente");
+            }
+            return json;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta idempotente", e);
+        }
+    }
+
+    private static String hash(List<?> parts) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                sha.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) 0x1f); // separador: ("ab","c") ≠ ("a","bc")
+            }
+            return Base64.getEncoder().withoutPadding().encodeToString(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (running) return;
+        running = true;
+        purger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "idempotency-purge");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = Math.max(1, purgeInterval.toMillis());
+        purger.scheduleWithFixedDelay(this::purgeExpired, every, every, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (purger != null) purger.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
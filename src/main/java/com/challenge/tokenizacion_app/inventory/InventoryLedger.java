@@ -0,0 +1,244 @@
+package com.challenge.tokenizacion_app.inventory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Ledger de inventario en memoria para productos "hot" ({@code inventory.ledger.hot-products}).
+ * <p>
+ * - La disponibilidad vive en un contador lock-free por producto (CAS), sembrado desde
+ *   {@code products.stock}; reservar no toca la fila caliente.
+ * - Cada reserva/devolución agrega una fila a {@code inventory_journal} en la transacción de la
+ *   orden (INSERT append-only). Si la transacción revierte, el contador se restaura.
+ * - Un flusher consolida el journal cada {@code flush-interval}: un solo UPDATE por producto con
+ *   la suma de deltas y el borrado de las filas aplicadas, en la misma transacción.
+ * - Al arrancar se aplica todo el journal pendiente (reconciliación tras caída) antes de sembrar.
+ * <p>
+ * El ledger es por proceso: con varias instancias cada SKU hot debe atenderse desde una sola.
+ */
+@Component
+@Slf4j
+public class InventoryLedger implements SmartLifecycle {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final Set<Long> hotProductIds;
+    private final Duration flushInterval;
+    private final int flushBatchSize;
+
+    private final Map<Long, AtomicInteger> available = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    public InventoryLedger(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${inventory.ledger.enabled:false}") boolean enabled,
+                           @Value("${inventory.ledger.hot-products:}") Set<Long> hotProductIds,
+                           @Value("${inventory.ledger.flush-interval:200ms}") Duration flushInterval,
+                           @Value("${inventory.ledger.flush-batch-size:5000}") int flushBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.hotProductIds = hotProductIds == null ? Set.of() : Set.copyOf(hotProductIds);
+        this.flushInterval = flushInterval;
+        this.flushBatchSize = Math.max(1, flushBatchSize);
+    }
+
+    /** true si el producto se atiende desde el ledger (switch por producto). */
+    public boolean isHot(Long productId) {
+        return running && available.containsKey(productId);
+    }
+
+    /**
+     * Reserva todas las líneas o ninguna. Debe llamarse dentro de la transacción de la orden:
+     * el journal se escribe en ella y, si revierte, las cantidades vuelven al contador.
+     */
+    public void reserve(SortedMap<Long, Integer> lines, Function<Long, String> nameForId) {
+        if (lines.isEmpty()) return;
+        Map<Long, Integer> taken = new LinkedHashMap<>();
+        for (Map.Entry<Long, Integer> e : lines.entrySet()) {
+            if (!tryTake(e.getKey(), e.getValue())) {
+                taken.forEach(this::giveBack);
+                throw new RuntimeException("Stock insuficiente al confirmar: " + nameForId.apply(e.getKey()));
+            }
+            taken.put(e.getKey(), e.getValue());
+        }
+        appendJournal(taken, -1);
+        afterRollback(() -> taken.forEach(this::giveBack));
+    }
+
+    /** Devuelve stock (compensación). El contador sube solo si la transacción confirma. */
+    public void release(SortedMap<Long, Integer> lines) {
+        if (lines.isEmpty()) return;
+        appendJournal(lines, +1);
+        Runnable apply = () -> lines.forEach(this::giveBack);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    public int available(Long productId) {
+        AtomicInteger a = available.get(productId);
+        return a == null ? -1 : a.get();
+    }
+
+    private boolean tryTake(Long productId, int qty) {
+        AtomicInteger a = available.get(productId);
+        while (true) {
+            int cur = a.get();
+            if (cur < qty) return false;
+            if (a.compareAndSet(cur, cur - qty)) return true;
+        }
+    }
+
+    private void giveBack(Long productId, int qty) {
+        available.get(productId).addAndGet(qty);
+    }
+
+    private void appendJournal(Map<Long, Integer> lines, int sign) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(lines.size());
+        lines.forEach((id, qty) -> rows.add(new Object[]{id, sign * qty, now}));
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO inventory_journal (product_id, delta, created_at) VALUES (?, ?, ?)", rows);
+    }
+
+    private static void afterRollback(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) action.run();
+            }
+        });
+    }
+
+    /* ----------------- Write-behind ----------------- */
+
+    /**
+     * Aplica hasta flushBatchSize filas del journal: suma por producto, un UPDATE por producto
+     * y borrado por id exacto de las filas leídas (nunca por rango: un id menor puede confirmar
+     * después).
+     *
+     * @return filas aplicadas
+     */
+    int flush() {
+        Integer applied = tx.execute(s -> {
+            List<long[]> rows = jdbcTemplate.query(
+                    "SELECT id, product_id, delta FROM inventory_journal ORDER BY id LIMIT ?",
+                    (rs, i) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getInt(3)},
+                    flushBatchSize);
+            if (rows.isEmpty()) return 0;
+
+            Map<Long, Long> sumByProduct = new TreeMap<>(); // orden de id: sin deadlocks con el camino DB
+            List<Object[]> ids = new ArrayList<>(rows.size());
+            for (long[] r : rows) {
+                sumByProduct.merge(r[1], r[2], Long::sum);
+                ids.add(new Object[]{r[0]});
+            }
+            sumByProduct.forEach((productId, delta) -> {
+                if (delta != 0) {
+                    jdbcTemplate.update(
+                            "UPDATE products SET stock = stock + ?, version = version + 1 WHERE id = ?",
+                            delta, productId);
+                }
+            });
+            jdbcTemplate.batchUpdate("DELETE FROM inventory_journal WHERE id = ?", ids);
+            return rows.size();
+        });
+        return applied == null ? 0 : applied;
+    }
+
+    private void flushQuietly() {
+        try {
+            while (flush() == flushBatchSize) {
+                // hay más pendiente: seguimos en esta misma vuelta
+            }
+        } catch (Exception e) {
+            log.warn("Fallo aplicando journal de inventario (se reintenta): {}", e.getMessage());
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+
+        // 1) Reconciliación: lo que quedó en el journal (p.ej. tras una caída) se aplica primero
+        int total = 0, n;
+        while ((n = flush()) > 0) total += n;
+        if (total > 0) log.info("Inventario reconciliado: {} movimientos pendientes aplicados", total);
+
+        // 2) Sembrar contadores desde la DB ya consolidada
+        for (Long id : hotProductIds) {
+            List<Integer> stock = jdbcTemplate.queryForList(
+                    "SELECT stock FROM products WHERE id = ?", Integer.class, id);
+            if (stock.isEmpty()) {
+                log.warn("Producto hot {} no existe; se atiende por la DB", id);
+                continue;
+            }
+            available.put(id, new AtomicInteger(stock.get(0)));
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-ledger-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        long every = Math.max(1, flushInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, every, every, TimeUnit.MILLISECONDS);
+        running = true;
+        log.info("Ledger de inventario activo para productos {}", available.keySet());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Igual que la auditoría: se detiene después del servidor web y antes del DataSource. */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -0,0 +1,261 @@
+package com.challenge.tokenizacion_app.mail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cola de envío SMTP en lotes.
+ * <p>
+ * Los correos entran a una cola acotada y {@code connections} hilos emisores la vacían: cada
+ * uno junta hasta {@code batch-size} mensajes (o lo que llegue en {@code linger}) y los manda con
+ * {@link JavaMailSender#send(MimeMessage...)}, que abre una sola sesión SMTP por lote. Así el
+ * costo de conexión (TCP + EHLO + STARTTLS + AUTH) se paga una vez por lote y no por correo, y
+ * {@code connections} acota las sesiones simultáneas contra el servidor.
+ * <p>
+ * Reintentos por lote: si el lote falla por un error transitorio (conexión, timeout, 4xx) se
+ * reintenta con backoff solo lo que no salió; los rechazos definitivos de destinatario
+ * ({@link SendFailedException}) fallan ese mensaje sin reintento. Cada {@link #submit} devuelve
+ * un future que se completa cuando el mensaje se entregó al servidor o falló definitivamente.
+ */
+@Component
+@Slf4j
+public class MailDispatcher implements SmartLifecycle {
+
+    private record Pending(MimeMessage message, CompletableFuture<Void> result) {}
+
+    private final JavaMailSender mailSender;
+    private final BlockingQueue<Pending> queue;
+    private final boolean enabled;
+    private final int connections;
+    private final int batchSize;
+    private final Duration linger;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+
+    private final Timer sendTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter retries;
+
+    private volatile boolean running;
+    private final List<Thread> workers = new ArrayList<>();
+
+    public MailDispatcher(JavaMailSender mailSender,
+                          MeterRegistry meterRegistry,
+                          @Value("${mail.dispatch.enabled:true}") boolean enabled,
+                          @Value("${mail.dispatch.queue-capacity:5000}") int queueCapacity,
+                          @Value("${mail.dispatch.connections:2}") int connections,
+                          @Value("${mail.dispatch.batch-size:50}") int batchSize,
+                          @Value("${mail.dispatch.linger:200ms}") Duration linger,
+                          @Value("${mail.dispatch.max-attempts:3}") int maxAttempts,
+                          @Value("${mail.dispatch.initial-backoff:500ms}") Duration initialBackoff) {
+        this.mailSender = mailSender;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.enabled = enabled;
+        this.connections = Math.max(1, connections);
+        this.batchSize = Math.max(1, batchSize);
+        this.linger = linger;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = initialBackoff;
+
+        Gauge.builder("mail.queue.depth", queue, BlockingQueue::size)
+                .description("Correos esperando sesión SMTP")
+                .register(meterRegistry);
+        this.sendTimer = Timer.builder("mail.batch.send.latency")
+                .description("Duración de cada envío de lote (una sesión SMTP)")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("mail.batch.size").register(meterRegistry);
+        this.sent = Counter.builder("mail.sent").register(meterRegistry);
+        this.failed = Counter.builder("mail.failed").register(meterRegistry);
+        this.retries = Counter.builder("mail.batch.retries").register(meterRegistry);
+    }
+
+    /**
+     * Encola un correo. Con la cola llena el future falla de inmediato (el llamador, p. ej. el
+     * outbox, reintenta más tarde). Si la cola no está activa se envía en línea.
+     */
+    public CompletableFuture<Void> submit(MimeMessage message) {
+        Pending p = new Pending(message, new CompletableFuture<>());
+        if (!running) {
+            sendWithRetry(new ArrayList<>(List.of(p)));
+        } else if (!queue.offer(p)) {
+            failed.increment();
+            p.result().completeExceptionally(new IllegalStateException("Cola de correo llena"));
+        }
+        return p.result();
+    }
+
+    public int backlog() {
+        return queue.size();
+    }
+
+    private void runLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        long lingerNanos = linger.toNanos();
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(lingerNanos, TimeUnit.NANOSECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || left <= 0) break;
+                    Pending next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                sendWithRetry(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Envía el lote en una sesión; reintenta lo pendiente ante fallas transitorias. */
+    void sendWithRetry(List<Pending> batch) {
+        List<Pending> remaining = new ArrayList<>(batch);
+        Exception last = null;
+        for (int attempt = 1; attempt <= maxAttempts && !remaining.isEmpty(); attempt++) {
+            if (attempt > 1) {
+                retries.increment();
+                if (!sleep(initialBackoff.multipliedBy(1L << Math.min(attempt - 2, 16)))) break;
+            }
+            MimeMessage[] messages = remaining.stream().map(Pending::message).toArray(MimeMessage[]::new);
+            batchSizes.record(messages.length);
+            long start = System.nanoTime();
+            try {
+                mailSender.send(messages);
+                complete(remaining);
+                remaining.clear();
+            } catch (MailSendException e) {
+                last = e;
+                remaining = partition(remaining, e.getFailedMessages());
+            } catch (MailException e) {
+                // Conexión/autenticación: no salió nada, se reintenta el lote completo
+                last = e;
+            } finally {
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            log.warn("No se pudieron enviar {} correos tras {} intentos: {}",
+                    remaining.size(), maxAttempts, last != null ? last.getMessage() : "interrumpido");
+            for (Pending p : remaining) {
+                failed.increment();
+                p.result().completeExceptionally(last != null ? last : new IllegalStateException("Envío interrumpido"));
+            }
+        }
+    }
+
+    /**
+     * Con fallas por mensaje: los que no figuran salieron bien; los rechazos de destinatario son
+     * definitivos; el resto se reintenta.
+     */
+    private List<Pending> partition(List<Pending> batch, Map<Object, Exception> failures) {
+        if (failures.isEmpty()) {
+            return batch; // sin detalle: se asume que no salió nada
+        }
+        List<Pending> retry = new ArrayList<>();
+        for (Pending p : batch) {
+            Exception cause = failures.get(p.message());
+            if (cause == null) {
+                complete(List.of(p));
+            } else if (cause instanceof SendFailedException) {
+                failed.increment();
+                p.result().completeExceptionally(cause);
+            } else {
+                retry.add(p);
+            }
+        }
+        return retry;
+    }
+
+    private void complete(List<Pending> done) {
+        for (Pending p : done) {
+            p.result().complete(null);
+        }
+        sent.increment(done.size());
+    }
+
+    private static boolean sleep(Duration d) {
+        try {
+            Thread.sleep(d.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        for (int i = 1; i <= connections; i++) {
+            Thread t = new Thread(this::runLoop, "mail-sender-" + i);
+            t.setDaemon(false);
+            t.start();
+            workers.add(t);
+        }
+        log.info("Envío de correo en lotes activo (conexiones={}, batch={}, linger={})",
+                connections, batchSize, linger);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        // Los emisores ven running=false y terminan de vaciar la cola
+        running = false;
+        for (Thread t : workers) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.clear();
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) sendWithRetry(rest);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Se detiene después del outbox ({@code DEFAULT_PHASE - 4096}), que todavía encola correos. */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 8192;
+    }
+}
@@ -0,0 +1,67 @@
+package com.challenge.tokenizacion_app.mail;
+
+import com.challenge.tokenizacion_app.events.OrderFinalizedEvent;
+import com.challenge.tokenizacion_app.mail.template.CompiledTemplate;
+import com.challenge.tokenizacion_app.mail.template.MoneyFormatter;
+import com.challenge.tokenizacion_app.mail.template.RenderedMail;
+import com.challenge.tokenizacion_app.mail.template.TemplateBindings;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Plantillas de correo de órdenes ({@code classpath:mail-templates/}), compiladas una vez al
+ * arrancar. Cada render produce HTML y texto plano en una sola pasada.
+ */
+@Component
+public class OrderEmailTemplates {
+
+    public static final Locale LOCALE_CO = Locale.forLanguageTag("es-CO");
+
+    private final CompiledTemplate<OrderFinalizedEvent> approved;
+    private final CompiledTemplate<OrderFinalizedEvent> rejected;
+
+    public OrderEmailTemplates() {
+        this(new MoneyFormatter(LOCALE_CO));
+    }
+
+    public OrderEmailTemplates(MoneyFormatter money) {
+        TemplateBindings<OrderFinalizedEvent.Item> item = new TemplateBindings<OrderFinalizedEvent.Item>()
+                .text("name", it -> it.productName() != null ? it.productName() : "Producto")
+                .number("quantity", OrderFinalizedEvent.Item::quantity)
+                .money("unitPrice", OrderFinalizedEvent.Item::unitPrice, money)
+                .money("subtotal", OrderFinalizedEvent.Item::subtotal, money);
+
+        TemplateBindings<OrderFinalizedEvent> order = new TemplateBindings<OrderFinalizedEvent>()
+                .number("orderId", OrderFinalizedEvent::orderId)
+                .number("attempts", OrderFinalizedEvent::attempts)
+                .text("deliveryAddress", OrderFinalizedEvent::deliveryAddress)
+                .when("hasAddress", ev -> ev.deliveryAddress() != null)
+                .money("total", OrderFinalizedEvent::total, money)
+                .each("items", OrderFinalizedEvent::items, item);
+
+        this.approved = CompiledTemplate.compile("order-approved", load("order-approved.html"), order);
+        this.rejected = CompiledTemplate.compile("order-rejected", load("order-rejected.html"), order);
+    }
+
+    public RenderedMail approved(OrderFinalizedEvent ev) {
+        return approved.render(ev);
+    }
+
+    public RenderedMail rejected(OrderFinalizedEvent ev) {
+        return rejected.render(ev);
+    }
+
+    private static String load(String file) {
+        try (InputStream in = new ClassPathResource("mail-templates/" + file).getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo cargar la plantilla " + file, e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.challenge.tokenizacion_app.mail.template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plantilla ya parseada: una lista de nodos (literales con su texto plano precalculado,
+ * variables y secciones) que se recorre una sola vez por render.
+ * <p>
+ * Sintaxis: {@code {{variable}}}, {@code {{#seccion}}...{{/seccion}}}. Los valores se escapan
+ * para HTML; los literales se copian tal cual.
+ */
+public final class CompiledTemplate<T> {
+
+    interface Node<T> {
+        void render(T ctx, MailOutput out);
+    }
+
+    private record Literal<T>(String html, String text) implements Node<T> {
+        @Override
+        public void render(T ctx, MailOutput out) {
+            out.literal(html, text);
+        }
+    }
+
+    private record Var<T>(TemplateBindings.Value<T> value) implements Node<T> {
+        @Override
+        public void render(T ctx, MailOutput out) {
+            value.write(ctx, out);
+        }
+    }
+
+    private record WhenNode<T>(TemplateBindings.When<T> when, List<Node<T>> body) implements Node<T> {
+        @Override
+        public void render(T ctx, MailOutput out) {
+            if (when.condition().test(ctx)) {
+                for (Node<T> n : body) n.render(ctx, out);
+            }
+        }
+    }
+
+    private record EachNode<T, C>(TemplateBindings.Each<T, C> each, List<Node<C>> body) implements Node<T> {
+        @Override
+        public void render(T ctx, MailOutput out) {
+            Iterable<C> items = each.items().apply(ctx);
+            if (items == null) return;
+            for (C item : items) {
+                for (Node<C> n : body) n.render(item, out);
+            }
+        }
+    }
+
+    private final String name;
+    private final List<Node<T>> nodes;
+    private final int literalLength;
+
+    private CompiledTemplate(String name, List<Node<T>> nodes, int literalLength) {
+        this.name = name;
+        this.nodes = nodes;
+        this.literalLength = literalLength;
+    }
+
+    public RenderedMail render(T ctx) {
+        // Capacidad inicial: el literal completo + margen para valores y repeticiones
+        MailOutput out = new MailOutput(literalLength * 2, literalLength);
+        for (Node<T> n : nodes) n.render(ctx, out);
+        return out.result();
+    }
+
+    /* ----------------- Compilación ----------------- */
+
+    public static <T> CompiledTemplate<T> compile(String name, String source, TemplateBindings<T> bindings) {
+        Parser p = new Parser(name, source);
+        List<Node<T>> nodes = p.parse(bindings, null);
+        return new CompiledTemplate<>(name, List.copyOf(nodes), source.length());
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledTemplate[" + name + "]";
+    }
+
+    private static final class Parser {
+        private final String name;
+        private final String src;
+        private int pos;
+
+        Parser(String name, String src) {
+            this.name = name;
+            this.src = src;
+        }
+
+        <T> List<Node<T>> parse(TemplateBindings<T> bindings, String closing) {
+            List<Node<T>> out = new ArrayList<>();
+            while (pos < src.length()) {
+                int open = src.indexOf("{{", pos);
+                if (open < 0) {
+                    addLiteral(out, src.substring(pos));
+                    pos = src.length();
+                    break;
+                }
+                addLiteral(out, src.substring(pos, open));
+                int close = src.indexOf("}}", open);
+                if (close < 0) throw error("'{{' sin cerrar", open);
+                String tag = src.substring(open + 2, close).trim();
+                pos = close + 2;
+
+                if (tag.startsWith("/")) {
+                    String ended = tag.substring(1).trim();
+                    if (!ended.equals(closing)) throw error("cierre inesperado {{/" + ended + "}}", open);
+                    return out;
+                }
+                if (tag.startsWith("#")) {
+                    out.add(section(bindings, tag.substring(1).trim(), open));
+                } else {
+                    TemplateBindings.Value<T> value = bindings.value(tag);
+                    if (value == null) throw error("variable desconocida {{" + tag + "}}", open);
+                    out.add(new Var<>(value));
+                }
+            }
+            if (closing != null) throw error("falta {{/" + closing + "}}", src.length());
+            return out;
+        }
+
+        private <T> Node<T> section(TemplateBindings<T> bindings, String sectionName, int at) {
+            TemplateBindings.Section<T> section = bindings.section(sectionName);
+            if (section instanceof TemplateBindings.When<T> when) {
+                return new WhenNode<>(when, List.copyOf(parse(bindings, sectionName)));
+            }
+            if (section instanceof TemplateBindings.Each<T, ?> each) {
+                return eachNode(each, sectionName);
+            }
+            throw error("sección desconocida {{#" + sectionName + "}}", at);
+        }
+
+        private <T, C> Node<T> eachNode(TemplateBindings.Each<T, C> each, String sectionName) {
+            return new EachNode<>(each, List.copyOf(parse(each.child(), sectionName)));
+        }
+
+        private static <T> void addLiteral(List<Node<T>> out, String html) {
+            if (!html.isEmpty()) out.add(new Literal<>(html, stripTags(html)));
+        }
+
+        /** Cada tag se reemplaza por un espacio; el colapso de espacios lo hace {@link MailOutput}. */
+        private static String stripTags(String html) {
+            StringBuilder sb = new StringBuilder(html.length());
+            boolean inTag = false;
+            for (int i = 0; i < html.length(); i++) {
+                char c = html.charAt(i);
+                if (inTag) {
+                    if (c == '>') {
+                        inTag = false;
+                        sb.append(' ');
+                    }
+                } else if (c == '<') {
+                    inTag = true;
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+
+        private IllegalStateException error(String msg, int at) {
+            return new IllegalStateException("Plantilla " + name + ": " + msg + " (posición " + at + ")");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.challenge.tokenizacion_app.mail.template;
+
+/**
+ * Destino de un render: escribe a la vez el HTML y el texto plano. El texto colapsa espacios
+ * en línea (equivalente a {@code replaceAll("\\s+", " ").trim()}, sin regex ni segunda pasada).
+ */
+final class MailOutput {
+
+    private final StringBuilder html;
+    private final StringBuilder text;
+    private boolean pendingSpace;
+
+    MailOutput(int htmlCapacity, int textCapacity) {
+        this.html = new StringBuilder(htmlCapacity);
+        this.text = new StringBuilder(textCapacity);
+    }
+
+    /** Literal ya compilado: HTML tal cual y su texto precalculado (sin tags). */
+    void literal(String htmlPart, String textPart) {
+        html.append(htmlPart);
+        appendText(textPart);
+    }
+
+    /** Valor dinámico: escapado en el HTML, crudo (con espacios colapsados) en el texto. */
+    void value(CharSequence v) {
+        for (int i = 0, n = v.length(); i < n; i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '&' -> html.append("&amp;");
+                case '<' -> html.append("&lt;");
+                case '>' -> html.append("&gt;");
+                case '"' -> html.append("&quot;");
+                case '\'' -> html.append("&#39;");
+                default -> html.append(c);
+            }
+        }
+        appendText(v);
+    }
+
+    void value(long v) {
+        html.append(v);
+        if (pendingSpace) {
+            text.append(' ');
+            pendingSpace = false;
+        }
+        text.append(v);
+    }
+
+    private void appendText(CharSequence s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = text.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    text.append(' ');
+                    pendingSpace = false;
+                }
+                text.append(c);
+            }
+        }
+    }
+
+    RenderedMail result() {
+        return new RenderedMail(html.toString(), text.toString());
+    }
+}
@@ -0,0 +1,42 @@
+package com.challenge.tokenizacion_app.mail.template;
+
+import java.math.BigDecimal;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Formato de moneda cacheado y thread-safe. {@link NumberFormat} no es thread-safe, así que
+ * cada hilo tiene su instancia (creada una vez) y un buffer reutilizable; el render no llama a
+ * {@code getCurrencyInstance} por valor.
+ */
+public final class MoneyFormatter {
+
+    private static final class Slot {
+        final NumberFormat format;
+        final StringBuffer buffer = new StringBuffer(32);
+        final FieldPosition position = new FieldPosition(0);
+
+        Slot(Locale locale) {
+            this.format = NumberFormat.getCurrencyInstance(locale);
+        }
+    }
+
+    private final ThreadLocal<Slot> slots;
+
+    public MoneyFormatter(Locale locale) {
+        this.slots = ThreadLocal.withInitial(() -> new Slot(locale));
+    }
+
+    /** Formatea en el buffer del hilo; el resultado vale hasta la siguiente llamada en el mismo hilo. */
+    CharSequence format(BigDecimal v) {
+        if (v == null) return "-";
+        Slot s = slots.get();
+        s.buffer.setLength(0);
+        return s.format.format(v, s.buffer, s.position);
+    }
+
+    public String formatToString(BigDecimal v) {
+        return format(v).toString();
+    }
+}
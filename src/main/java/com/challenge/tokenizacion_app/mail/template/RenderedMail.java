@@ -0,0 +1,4 @@
+package com.challenge.tokenizacion_app.mail.template;
+
+/** Resultado de renderizar una plantilla: parte HTML y parte de texto plano. */
+public record RenderedMail(String html, String text) {}
@@ -0,0 +1,68 @@
+package com.challenge.tokenizacion_app.mail.template;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Variables y secciones que una plantilla puede usar sobre un contexto {@code T}. Se resuelven
+ * al compilar: un nombre desconocido falla al arrancar, no al enviar.
+ */
+public final class TemplateBindings<T> {
+
+    /** Escribe un valor del contexto en la salida. */
+    interface Value<T> {
+        void write(T ctx, MailOutput out);
+    }
+
+    sealed interface Section<T> permits When, Each {}
+
+    record When<T>(Predicate<T> condition) implements Section<T> {}
+
+    record Each<T, C>(Function<T, ? extends Iterable<C>> items, TemplateBindings<C> child) implements Section<T> {}
+
+    private final Map<String, Value<T>> values = new HashMap<>();
+    private final Map<String, Section<T>> sections = new HashMap<>();
+
+    public TemplateBindings<T> text(String name, Function<T, ? extends CharSequence> getter) {
+        values.put(name, (ctx, out) -> {
+            CharSequence v = getter.apply(ctx);
+            out.value(v != null ? v : "");
+        });
+        return this;
+    }
+
+    public TemplateBindings<T> number(String name, ToLongFunction<T> getter) {
+        values.put(name, (ctx, out) -> out.value(getter.applyAsLong(ctx)));
+        return this;
+    }
+
+    public TemplateBindings<T> money(String name, Function<T, BigDecimal> getter, MoneyFormatter formatter) {
+        values.put(name, (ctx, out) -> out.value(formatter.format(getter.apply(ctx))));
+        return this;
+    }
+
+    /** {@code {{#name}}...{{/name}}} se renderiza solo si la condición se cumple. */
+    public TemplateBindings<T> when(String name, Predicate<T> condition) {
+        sections.put(name, new When<>(condition));
+        return this;
+    }
+
+    /** {@code {{#name}}...{{/name}}} se repite por cada elemento, con sus propias variables. */
+    public <C> TemplateBindings<T> each(String name, Function<T, ? extends Iterable<C>> items,
+                                        TemplateBindings<C> child) {
+        sections.put(name, new Each<>(items, child));
+        return this;
+    }
+
+    Value<T> value(String name) {
+        return values.get(name);
+    }
+
+    Section<T> section(String name) {
+        return sections.get(name);
+    }
+}
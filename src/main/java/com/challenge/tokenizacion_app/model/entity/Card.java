@@ -3,36 +3,89 @@ package com.challenge.tokenizacion_app.model.entity;
 import jakarta.persistence.*;
 import lombok.*;
 
-import com.challenge.tokenizacion_app.security.crypto.AesGcmStringCryptoConverter;
+import com.challenge.tokenizacion_app.cache.CardCacheInvalidationListener;
+import com.challenge.tokenizacion_app.security.crypto.CardSecrets;
+import com.challenge.tokenizacion_app.security.crypto.SealedCardRecord;
+import com.challenge.tokenizacion_app.security.crypto.SealedCardRecordConverter;
+import com.challenge.tokenizacion_app.security.crypto.SealedString;
+import com.challenge.tokenizacion_app.security.crypto.SealedStringConverter;
+import com.challenge.tokenizacion_app.security.token.CardTokenIssuer;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table(name = "cards")
+@Table(
+        name = "cards",
+        indexes = {
+                @Index(name = "idx_cards_user_id", columnList = "user_id, id"), // listado keyset por usuario
+                // Re-tokenización: una tarjeta por (usuario, PAN); cierra la carrera entre peticiones simultáneas
+                @Index(name = "uk_cards_user_fingerprint", columnList = "user_id, pan_fingerprint", unique = true)
+        }
+)
+@EntityListeners(CardCacheInvalidationListener.class) // invalida CardTokenCache
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
-@ToString(exclude = {"cvv", "expiryDate"}) // evita loggear datos sensibles
+@ToString(exclude = {"tokenKey", "panFingerprint", "secrets", "cvv", "expiryDate"}) // evita loggear datos sensibles
 public class Card {
     @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, unique = true)
-    private String token; // tokenizado
+    // Tokenizado. Null con tokenization.token.storage=BINARY: se guarda solo tokenKey (ver getToken)
+    @Column(unique = true)
+    private String token;
+
+    // Los 16 bytes del token (tokenization.token.storage=BINARY): único índice que usan las búsquedas
+    @Column(name = "token_key", length = 16, unique = true)
+    @JsonIgnore
+    private byte[] tokenKey;
 
     @Column(nullable = false)
     private String maskedNumber; // **** **** **** 1234
 
+    // HMAC-SHA256 del PAN (PanFingerprinter). Null en tarjetas anteriores a la huella
+    @Column(name = "pan_fingerprint", length = 32)
+    @JsonIgnore
+    private byte[] panFingerprint;
+
     // ---- CAMPOS CIFRADOS ----
-    @Column(nullable = false)
-    @Convert(converter = AesGcmStringCryptoConverter.class)
+    // cvv + expiración en un solo registro AEAD binario, con el token como AAD.
+    // Se carga sellado: el descifrado ocurre solo en revealSecrets()
+    @Column(name = "secrets", length = 128)
+    @Convert(converter = SealedCardRecordConverter.class)
     @JsonIgnore // no exponer en respuestas por accidente
-    private String cvv;
+    private SealedCardRecord secrets;
 
-    @Column(nullable = false)
-    @Convert(converter = AesGcmStringCryptoConverter.class)
-    @JsonIgnore // no exponer en respuestas por accidente
-    private String expiryDate;
+    // Formato anterior (dos columnas vN:+Base64). Solo filas sin migrar; se vacían al migrar
+    @Column
+    @Convert(converter = SealedStringConverter.class)
+    @JsonIgnore
+    private SealedString cvv;
+
+    @Column
+    @Convert(converter = SealedStringConverter.class)
+    @JsonIgnore
+    private SealedString expiryDate;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     @JsonIgnore
     private User user;
-}
\ No newline at end of file
+
+    /** Texto del token: la columna o, si solo se guardó la clave binaria, derivado de ella. */
+    public String getToken() {
+        return token != null ? token : CardTokenIssuer.tokenOf(tokenKey);
+    }
+
+    /**
+     * Descifra cvv y expiración. Una fila en el formato anterior se re-sella en el registro
+     * empaquetado y se vacían las columnas viejas: si la entidad está administrada, el UPDATE
+     * sale en el flush (migración perezosa).
+     */
+    public CardSecrets revealSecrets() {
+        if (secrets != null) return secrets.open(getToken());
+        if (cvv == null || expiryDate == null) return null;
+        CardSecrets plain = new CardSecrets(cvv.reveal(), expiryDate.reveal());
+        this.secrets = SealedCardRecord.seal(plain, getToken());
+        this.cvv = null;
+        this.expiryDate = null;
+        return plain;
+    }
+}
@@ -0,0 +1,47 @@
+package com.challenge.tokenizacion_app.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Respuesta registrada para un {@code Idempotency-Key} (nivel persistente del
+ * {@code IdempotencyStore}). La fila se inserta IN_PROGRESS antes de ejecutar (reclamo de la
+ * llave entre instancias) y pasa a COMPLETED con el status y el cuerpo JSON de la respuesta.
+ */
+@Entity
+@Table(
+        name = "idempotency_keys",
+        indexes = {
+                @Index(name = "idx_idempotency_keys_expires", columnList = "expires_at")
+        }
+)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class IdempotencyRecord {
+
+    /** {@code scope:key}, p. ej. {@code orders.create:3f1c...}. */
+    @Id
+    @Column(name = "idem_key", length = 320)
+    private String key;
+
+    /** SHA-256 (base64) de los parámetros del request; otro payload con la misma llave → 422. */
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+
+    /** IN_PROGRESS | COMPLETED */
+    @Column(nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "http_status")
+    private Integer httpStatus;
+
+    @Column(name = "response_body", length = 8192)
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,36 @@
+package com.challenge.tokenizacion_app.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Movimiento de stock de un producto "hot" aún no aplicado a {@code products.stock}.
+ * Se inserta en la misma transacción que la orden (append-only, sin contención de fila) y el
+ * flusher del {@code InventoryLedger} lo consolida y borra. Es la fuente para reconciliar
+ * tras una caída.
+ */
+@Entity
+@Table(
+        name = "inventory_journal",
+        indexes = {
+                @Index(name = "idx_inventory_journal_product", columnList = "product_id")
+        }
+)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class InventoryJournalEntry {
+
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    /** Negativo = reserva, positivo = devolución. */
+    @Column(nullable = false)
+    private int delta;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -4,14 +4,24 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Entity
-@Table(name = "logs")
+@Table(
+        name = "logs",
+        indexes = {
+                // Keyset (timestamp, id) con y sin filtro; ver LogEventJdbcRepository.findPage
+                @Index(name = "idx_logs_ts_id", columnList = "timestamp, id"),
+                @Index(name = "idx_logs_user_ts_id", columnList = "user_id, timestamp, id"),
+                @Index(name = "idx_logs_type_ts_id", columnList = "event_type, timestamp, id")
+        }
+)
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class LogEvent {
 
+    /** UUIDv7 (ordenado por tiempo), columna uuid nativa de 16 bytes. Ver {@code UuidV7}. */
     @Id
-    private String id; // UUID en lugar de Long
+    private UUID id;
 
     private String eventType;
     private String message;
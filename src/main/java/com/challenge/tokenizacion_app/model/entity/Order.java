@@ -4,11 +4,17 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(
+        name = "orders",
+        indexes = {
+                @Index(name = "idx_orders_status_created_at", columnList = "status, created_at") // PENDING vencidas
+        }
+)
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 @ToString(exclude = {"user", "card", "items"})
 public class Order {
@@ -21,6 +27,25 @@ public class Order {
     private String deliveryAddress;
     private int attempts;
 
+    /** Momento de la reserva; PendingOrderSweeper compensa las PENDING más viejas que orders.pending-timeout. */
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    /**
+     * Estado del cobro, independiente de {@link #status}:
+     * NONE (reservada, sin cobrar) → CHARGING (cobro en curso) → APPROVED | DECLINED al confirmar;
+     * VOID_PENDING (cobro sin registrar que falta anular en la pasarela) → VOIDED.
+     * Null = fila anterior a la columna (resultado desconocido).
+     */
+    @Column(name = "payment_state", length = 16)
+    private String paymentState;
+
+    @Column(name = "payment_reference", length = 64)
+    private String paymentReference;
+
+    @Column(name = "payment_started_at")
+    private LocalDateTime paymentStartedAt;
+
     /** Total de la orden (suma de quantity * unitPrice). */
     @Column(name = "total", nullable = false, precision = 19, scale = 2)
     @Builder.Default
@@ -0,0 +1,57 @@
+package com.challenge.tokenizacion_app.model.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Evento pendiente de entrega (transactional outbox). Se inserta en la misma transacción que
+ * el cambio de negocio, así que existe si y solo si el cambio confirmó; el
+ * {@code OutboxDispatcher} lo reclama en lotes y lo entrega a los handlers.
+ * <p>
+ * Estados: PENDING → IN_FLIGHT (reclamado hasta {@code next_attempt_at}) → DONE, o de vuelta a
+ * PENDING con backoff, o DEAD al agotar los intentos.
+ */
+@Entity
+@Table(
+        name = "outbox_events",
+        indexes = {
+                @Index(name = "idx_outbox_status_next_id", columnList = "status, next_attempt_at, id")
+        }
+)
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class OutboxEvent {
+
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "event_type", nullable = false, length = 64)
+    private String eventType;
+
+    @Column(name = "aggregate_id", nullable = false, length = 64)
+    private String aggregateId;
+
+    /** JSON del evento. */
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    /** PENDING | IN_FLIGHT | DONE | DEAD */
+    @Column(nullable = false, length = 16)
+    private String status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
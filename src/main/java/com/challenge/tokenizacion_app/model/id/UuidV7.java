@@ -0,0 +1,43 @@
+package com.challenge.tokenizacion_app.model.id;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de UUID versión 7 (RFC 9562): 48 bits de epoch en ms + 12 bits de secuencia
+ * monótona + 62 bits aleatorios.
+ * <p>
+ * Los ids crecen con el tiempo, así los INSERT van al final del índice (append-mostly) y
+ * los rangos por fecha quedan alineados con el orden de la PK. La parte aleatoria usa
+ * {@link ThreadLocalRandom}: no son secretos, no hace falta SecureRandom.
+ */
+public final class UuidV7 {
+
+    // (ms << 12) | secuencia del último id emitido; CAS sin locks
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private UuidV7() {}
+
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        long prev, ts;
+        do {
+            prev = LAST.get();
+            // Si el reloj no avanzó (o retrocedió), seguimos desde el último + 1
+            ts = Math.max(now, prev + 1);
+        } while (!LAST.compareAndSet(prev, ts));
+
+        long ms = ts >>> 12;
+        long seq = ts & 0xFFFL;
+        long msb = (ms << 16) | 0x7000L | seq;                     // version 7
+        long lsb = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL)
+                | 0x8000000000000000L;                             // variant 10
+        return new UUID(msb, lsb);
+    }
+
+    /** Milisegundos epoch embebidos en un UUIDv7 (útil para cursores por tiempo). */
+    public static long timestampOf(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+}
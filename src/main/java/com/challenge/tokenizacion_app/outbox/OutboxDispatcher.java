@@ -0,0 +1,321 @@
+package com.challenge.tokenizacion_app.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Entrega los eventos de {@code outbox_events} a los {@link OutboxHandler}.
+ * <p>
+ * Cada vuelta reclama hasta {@code batch-size} filas vencidas en una transacción corta:
+ * <ul>
+ *   <li>PostgreSQL: {@code SELECT ... FOR UPDATE SKIP LOCKED}, así varias instancias toman
+ *       lotes disjuntos sin esperarse.</li>
+ *   <li>Otras bases (H2): el reclamo es el propio UPDATE condicional
+ *       ({@code WHERE next_attempt_at <= now}); si otra instancia ganó, afecta 0 filas.</li>
+ * </ul>
+ * Reclamar mueve la fila a IN_FLIGHT con un lease ({@code next_attempt_at = now + lease}): si la
+ * instancia cae, la fila vuelve a ser elegible al vencer el lease. El lote se entrega en
+ * paralelo en el executor {@code mail} (ver {@code AsyncConfig}); el éxito marca DONE, el fallo reprograma con backoff
+ * exponencial y al llegar a {@code max-attempts} la fila queda DEAD (dead-letter) con el error.
+ */
+@Component
+@Slf4j
+public class OutboxDispatcher implements SmartLifecycle {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final Map<String, OutboxHandler> handlers;
+    private final Executor deliveryExecutor;
+    private final boolean enabled;
+    private final Duration pollInterval;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+    private final Duration retention;
+
+    private final Counter delivered;
+    private final Counter retried;
+    private final Counter deadLettered;
+    private final Timer handleTimer;
+
+    private volatile boolean running;
+    private boolean skipLocked;
+    private ScheduledExecutorService poller;
+
+    public OutboxDispatcher(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            List<OutboxHandler> handlers,
+                            @Qualifier("mailExecutor") Executor deliveryExecutor,
+                            MeterRegistry meterRegistry,
+                            @Value("${outbox.dispatcher.enabled:true}") boolean enabled,
+                            @Value("${outbox.dispatcher.poll-interval:500ms}") Duration pollInterval,
+                            @Value("${outbox.dispatcher.batch-size:100}") int batchSize,
+                            @Value("${outbox.dispatcher.max-attempts:8}") int maxAttempts,
+                            @Value("${outbox.dispatcher.initial-backoff:1s}") Duration initialBackoff,
+                            @Value("${outbox.dispatcher.max-backoff:10m}") Duration maxBackoff,
+                            @Value("${outbox.dispatcher.lease:2m}") Duration lease,
+                            @Value("${outbox.retention:7d}") Duration retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.handlers = handlers.stream()
+                .collect(Collectors.toUnmodifiableMap(OutboxHandler::eventType, Function.identity()));
+        this.deliveryExecutor = deliveryExecutor;
+        this.enabled = enabled;
+        this.pollInterval = pollInterval;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.lease = lease;
+        this.retention = retention;
+
+        this.delivered = Counter.builder("outbox.events.delivered").register(meterRegistry);
+        this.retried = Counter.builder("outbox.events.retried").register(meterRegistry);
+        this.deadLettered = Counter.builder("outbox.events.dead").register(meterRegistry);
+        this.handleTimer = Timer.builder("outbox.handle.latency")
+                .description("Duración de la entrega de un evento del outbox a su handler")
+                .register(meterRegistry);
+    }
+
+    private record Result(OutboxMessage message, Throwable error, boolean dead) {}
+
+    /**
+     * Reclama y entrega un lote.
+     *
+     * @return cantidad de mensajes reclamados
+     */
+    int dispatchOnce() {
+        List<OutboxMessage> batch = claim();
+        if (batch.isEmpty()) return 0;
+
+        List<CompletableFuture<Result>> futures = new ArrayList<>(batch.size());
+        for (OutboxMessage m : batch) {
+            futures.add(deliver(m));
+        }
+        List<Result> results = new ArrayList<>(batch.size());
+        for (CompletableFuture<Result> f : futures) {
+            results.add(f.join());
+        }
+        recordResults(results);
+        return batch.size();
+    }
+
+    private List<OutboxMessage> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+        Timestamp leaseTs = Timestamp.valueOf(now.plus(lease));
+        String select = """
+                SELECT id, event_type, aggregate_id, payload, attempts
+                FROM outbox_events
+                WHERE status IN ('PENDING', 'IN_FLIGHT') AND next_attempt_at <= ?
+                ORDER BY id
+                LIMIT ?
+                """ + (skipLocked ? " FOR UPDATE SKIP LOCKED" : "");
+
+        List<OutboxMessage> claimed = tx.execute(s -> {
+            List<OutboxMessage> candidates = jdbcTemplate.query(select, (rs, i) -> new OutboxMessage(
+                    rs.getLong("id"),
+                    rs.getString("event_type"),
+                    rs.getString("aggregate_id"),
+                    rs.getString("payload"),
+                    rs.getInt("attempts") + 1), nowTs, batchSize);
+            if (candidates.isEmpty()) return List.of();
+
+            List<Object[]> args = new ArrayList<>(candidates.size());
+            for (OutboxMessage m : candidates) {
+                args.add(new Object[]{leaseTs, m.id(), nowTs});
+            }
+            int[] counts = jdbcTemplate.batchUpdate("""
+                    UPDATE outbox_events
+                    SET status = 'IN_FLIGHT', attempts = attempts + 1, next_attempt_at = ?
+                    WHERE id = ? AND next_attempt_at <= ?
+                    """, args);
+            List<OutboxMessage> won = new ArrayList<>(candidates.size());
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) won.add(candidates.get(i));
+            }
+            return won;
+        });
+        return claimed == null ? List.of() : claimed;
+    }
+
+    /**
+     * Invoca el handler en el executor y espera su future como máximo el lease: pasado ese
+     * tiempo la fila podría reclamarse de nuevo, así que se cuenta como intento fallido.
+     */
+    private CompletableFuture<Result> deliver(OutboxMessage m) {
+        OutboxHandler handler = handlers.get(m.eventType());
+        if (handler == null) {
+            return CompletableFuture.completedFuture(
+                    new Result(m, new IllegalStateException("Sin handler para " + m.eventType()), true));
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Void> outcome;
+        try {
+            outcome = CompletableFuture.supplyAsync(() -> invoke(handler, m), deliveryExecutor)
+                    .thenCompose(Function.identity());
+        } catch (RejectedExecutionException e) {
+            // Executor saturado con política ABORT: se invoca en este hilo
+            outcome = invoke(handler, m);
+        }
+        return outcome
+                .orTimeout(lease.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((ok, error) -> {
+                    handleTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (error == null) return new Result(m, null, false);
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    return new Result(m, cause, m.attempt() >= maxAttempts);
+                });
+    }
+
+    private static CompletableFuture<Void> invoke(OutboxHandler handler, OutboxMessage m) {
+        try {
+            CompletableFuture<Void> f = handler.handle(m);
+            return f != null ? f : CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void recordResults(List<Result> results) {
+        LocalDateTime now = LocalDateTime.now();
+        Timestamp nowTs = Timestamp.valueOf(now);
+        List<Object[]> done = new ArrayList<>();
+        List<Object[]> retry = new ArrayList<>();
+        List<Object[]> dead = new ArrayList<>();
+
+        for (Result r : results) {
+            OutboxMessage m = r.message();
+            if (r.error() == null) {
+                done.add(new Object[]{nowTs, m.id()});
+            } else if (r.dead()) {
+                log.error("Evento {} #{} movido a DEAD tras {} intentos: {}",
+                        m.eventType(), m.id(), m.attempt(), r.error().getMessage());
+                dead.add(new Object[]{nowTs, truncate(r.error()), m.id()});
+            } else {
+                Timestamp next = Timestamp.valueOf(now.plus(backoff(m.attempt())));
+                log.warn("Evento {} #{} falló (intento {}), se reintenta: {}",
+                        m.eventType(), m.id(), m.attempt(), r.error().getMessage());
+                retry.add(new Object[]{next, truncate(r.error()), m.id()});
+            }
+        }
+
+        tx.executeWithoutResult(s -> {
+            if (!done.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                        "UPDATE outbox_events SET status = 'DONE', processed_at = ?, last_error = NULL WHERE id = ?", done);
+            }
+            if (!retry.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                        "UPDATE outbox_events SET status = 'PENDING', next_attempt_at = ?, last_error = ? WHERE id = ?", retry);
+            }
+            if (!dead.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                        "UPDATE outbox_events SET status = 'DEAD', processed_at = ?, last_error = ? WHERE id = ?", dead);
+            }
+        });
+        delivered.increment(done.size());
+        retried.increment(retry.size());
+        deadLettered.increment(dead.size());
+    }
+
+    /** initial * 2^(intento-1), con tope en max-backoff. */
+    Duration backoff(int attempt) {
+        long factor = 1L << Math.min(Math.max(0, attempt - 1), 30);
+        Duration d = initialBackoff.multipliedBy(factor);
+        return d.compareTo(maxBackoff) > 0 ? maxBackoff : d;
+    }
+
+    private static String truncate(Throwable e) {
+        String msg = e.getClass().getSimpleName() + ": " + e.getMessage();
+        return msg.length() > MAX_ERROR_LENGTH ? msg.substring(0, MAX_ERROR_LENGTH) : msg;
+    }
+
+    private void drain() {
+        try {
+            while (running && dispatchOnce() == batchSize) {
+                // lote completo: probablemente hay más, no esperamos al siguiente poll
+            }
+        } catch (Exception e) {
+            log.warn("Fallo despachando el outbox (se reintenta): {}", e.getMessage());
+        }
+    }
+
+    private void purgeDone() {
+        try {
+            int n = jdbcTemplate.update("DELETE FROM outbox_events WHERE status = 'DONE' AND processed_at < ?",
+                    Timestamp.valueOf(LocalDateTime.now().minus(retention)));
+            if (n > 0) log.debug("Eventos DONE del outbox purgados: {}", n);
+        } catch (Exception e) {
+            log.warn("Falló la purga del outbox: {}", e.getMessage());
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+        skipLocked = "PostgreSQL".equalsIgnoreCase(product);
+
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbox-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        long every = Math.max(1, pollInterval.toMillis());
+        poller.scheduleWithFixedDelay(this::drain, every, every, TimeUnit.MILLISECONDS);
+        poller.scheduleWithFixedDelay(this::purgeDone, 1, 60, TimeUnit.MINUTES);
+        log.info("Outbox activo (batch={}, skipLocked={}, handlers={})",
+                batchSize, skipLocked, handlers.keySet());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        // El lote en curso termina; lo no reclamado queda PENDING para el próximo arranque
+        poller.shutdown();
+        try {
+            poller.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Se detiene después del servidor web y antes del DataSource. */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
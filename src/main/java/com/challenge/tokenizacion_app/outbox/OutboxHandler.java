@@ -0,0 +1,18 @@
+package com.challenge.tokenizacion_app.outbox;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Consumidor de eventos del outbox. La entrega es at-least-once: el handler puede recibir el
+ * mismo mensaje más de una vez (p. ej. si la instancia cae después de entregar y antes de
+ * marcarlo DONE). Lanzar una excepción o fallar el future programa un reintento con backoff.
+ * El future permite terminar la entrega en otro hilo (p. ej. el envío de correo en lotes) sin
+ * ocupar un hilo del executor mientras tanto.
+ */
+public interface OutboxHandler {
+
+    /** Tipo de evento que atiende (columna {@code event_type}). */
+    String eventType();
+
+    CompletableFuture<Void> handle(OutboxMessage message) throws Exception;
+}
@@ -0,0 +1,4 @@
+package com.challenge.tokenizacion_app.outbox;
+
+/** Fila reclamada del outbox tal como la recibe un {@link OutboxHandler}. */
+public record OutboxMessage(long id, String eventType, String aggregateId, String payload, int attempt) {}
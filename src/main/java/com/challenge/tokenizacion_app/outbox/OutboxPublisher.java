@@ -0,0 +1,40 @@
+package com.challenge.tokenizacion_app.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Escribe eventos en {@code outbox_events} dentro de la transacción en curso: si el cambio de
+ * negocio revierte, el evento tampoco existe.
+ */
+@Component
+@RequiredArgsConstructor
+public class OutboxPublisher {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void append(String eventType, Object aggregateId, Object event) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("El outbox debe escribirse en la transacción del cambio");
+        }
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el evento " + eventType, e);
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update("""
+                INSERT INTO outbox_events (event_type, aggregate_id, payload, status, attempts, next_attempt_at, created_at)
+                VALUES (?, ?, ?, 'PENDING', 0, ?, ?)
+                """, eventType, String.valueOf(aggregateId), payload, now, now);
+    }
+}
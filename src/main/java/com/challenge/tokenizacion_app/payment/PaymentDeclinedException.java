@@ -0,0 +1,9 @@
+package com.challenge.tokenizacion_app.payment;
+
+/** Rechazo de un intento; lo usa el RetryTemplate para decidir el siguiente intento. */
+public class PaymentDeclinedException extends RuntimeException {
+
+    public PaymentDeclinedException(String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,21 @@
+package com.challenge.tokenizacion_app.payment;
+
+/**
+ * Puerto hacia la pasarela de pagos. Se invoca SIN transacción ni conexión de DB abierta:
+ * la latencia de la pasarela no debe retener el pool de Hikari.
+ */
+public interface PaymentGateway {
+
+    /**
+     * Un intento de cobro. Un rechazo del emisor se devuelve como {@code approved=false};
+     * las fallas técnicas (timeout, 5xx) se lanzan como excepción. Ambos casos se reintentan.
+     */
+    PaymentResult charge(PaymentRequest request);
+
+    /**
+     * Devuelve un cobro aprobado ({@code reference}) o, con {@code reference} null, anula cualquier
+     * cobro hecho para la orden (el resultado del cobro no quedó registrado). Idempotente: repetirlo
+     * no devuelve dos veces. Las fallas técnicas se lanzan como excepción y se reintentan.
+     */
+    void refund(Long orderId, String reference);
+}
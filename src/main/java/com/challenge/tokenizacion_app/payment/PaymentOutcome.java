@@ -0,0 +1,4 @@
+package com.challenge.tokenizacion_app.payment;
+
+/** Resultado final del cobro tras los reintentos. */
+public record PaymentOutcome(boolean approved, int attempts, String reference) {}
@@ -0,0 +1,66 @@
+package com.challenge.tokenizacion_app.payment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Ejecuta el cobro (y su devolución) con reintentos (spring-retry) y backoff exponencial entre intentos.
+ * No abre transacciones: se llama entre la reserva y la confirmación de la orden.
+ */
+@Component
+@Slf4j
+public class PaymentProcessor {
+
+    private final PaymentGateway gateway;
+    private final RetryTemplate retryTemplate;
+
+    public PaymentProcessor(PaymentGateway gateway,
+                            @Value("${payment.max-attempts:3}") int maxAttempts,
+                            @Value("${payment.retry.initial-backoff:50ms}") Duration initialBackoff,
+                            @Value("${payment.retry.multiplier:2.0}") double multiplier,
+                            @Value("${payment.retry.max-backoff:1s}") Duration maxBackoff) {
+        this.gateway = gateway;
+        this.retryTemplate = RetryTemplate.builder()
+                .maxAttempts(Math.max(1, maxAttempts))
+                .exponentialBackoff(Math.max(1, initialBackoff.toMillis()), Math.max(1.0, multiplier),
+                        Math.max(1, maxBackoff.toMillis()))
+                .retryOn(RuntimeException.class)
+                .build();
+    }
+
+    public PaymentOutcome charge(PaymentRequest request) {
+        int[] attempts = {0};
+        return retryTemplate.execute(ctx -> {
+            attempts[0] = ctx.getRetryCount() + 1;
+            PaymentResult r = gateway.charge(new PaymentRequest(request.orderId(), request.userId(),
+                    request.cardId(), request.cardToken(), request.amount(), attempts[0]));
+            if (!r.approved()) {
+                throw new PaymentDeclinedException(r.reason());
+            }
+            return new PaymentOutcome(true, attempts[0], r.reference());
+        }, ctx -> {
+            Throwable last = ctx.getLastThrowable();
+            if (last != null && !(last instanceof PaymentDeclinedException)) {
+                log.warn("Pago de orden {} falló tras {} intentos: {}",
+                        request.orderId(), attempts[0], last.getMessage());
+            }
+            return new PaymentOutcome(false, attempts[0], null);
+        });
+    }
+
+    /**
+     * Devuelve el cobro {@code reference} o, sin referencia, anula cualquier cobro de la orden.
+     * Con los mismos reintentos que el cobro; si todos fallan lanza la última excepción.
+     */
+    public void refund(Long orderId, String reference) {
+        retryTemplate.execute(ctx -> {
+            gateway.refund(orderId, reference);
+            return null;
+        });
+        log.info("Cobro de la orden {} devuelto (referencia {})", orderId, reference == null ? "-" : reference);
+    }
+}
@@ -0,0 +1,12 @@
+package com.challenge.tokenizacion_app.payment;
+
+import java.math.BigDecimal;
+
+public record PaymentRequest(
+        Long orderId,
+        Long userId,
+        Long cardId,
+        String cardToken,
+        BigDecimal amount,
+        int attempt
+) {}
@@ -0,0 +1,12 @@
+package com.challenge.tokenizacion_app.payment;
+
+public record PaymentResult(boolean approved, String reference, String reason) {
+
+    public static PaymentResult approved(String reference) {
+        return new PaymentResult(true, reference, null);
+    }
+
+    public static PaymentResult rejected(String reason) {
+        return new PaymentResult(false, null, reason);
+    }
+}
@@ -0,0 +1,53 @@
+package com.challenge.tokenizacion_app.payment;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pasarela simulada (dev / pruebas de carga): rechaza con {@code payment.rejection-probability}
+ * y tarda {@code payment.simulated.latency} ± {@code payment.simulated.jitter} por intento.
+ */
+@Component
+@ConditionalOnProperty(name = "payment.gateway", havingValue = "simulated", matchIfMissing = true)
+public class SimulatedPaymentGateway implements PaymentGateway {
+
+    private final double rejectionProb;
+    private final long latencyMs;
+    private final long jitterMs;
+
+    public SimulatedPaymentGateway(@Value("${payment.rejection-probability:0.3}") double rejectionProb,
+                                   @Value("${payment.simulated.latency:0ms}") Duration latency,
+                                   @Value("${payment.simulated.jitter:0ms}") Duration jitter) {
+        this.rejectionProb = rejectionProb;
+        this.latencyMs = Math.max(0, latency.toMillis());
+        this.jitterMs = Math.max(0, jitter.toMillis());
+    }
+
+    @Override
+    public PaymentResult charge(PaymentRequest request) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long delay = latencyMs + (jitterMs > 0 ? rnd.nextLong(-jitterMs, jitterMs + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Pago interrumpido", e);
+            }
+        }
+        if (rnd.nextDouble() >= rejectionProb) {
+            return PaymentResult.approved("SIM-" + UUID.randomUUID());
+        }
+        return PaymentResult.rejected("Rechazado por el emisor (simulado)");
+    }
+
+    @Override
+    public void refund(Long orderId, String reference) {
+        // Simulada: no hay dinero que devolver
+    }
+}
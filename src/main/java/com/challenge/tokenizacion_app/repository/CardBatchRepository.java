@@ -0,0 +1,72 @@
+package com.challenge.tokenizacion_app.repository;
+
+import com.challenge.tokenizacion_app.model.entity.Card;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Inserciones masivas de tarjetas vía JDBC batch.
+ * Card usa IDENTITY, por lo que Hibernate no puede agrupar los INSERT;
+ * aquí se envían en lotes con el registro cifrado ({@code secrets}) ya sellado por el llamador.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CardBatchRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO cards (token, token_key, masked_number, pan_fingerprint, secrets, user_id) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${tokenization.batch.jdbc-batch-size:500}")
+    private int batchSize;
+
+    /** Inserta las tarjetas (con {@code secrets} sellado). El user debe venir con id. */
+    public void insertAll(List<Card> cards) {
+        if (cards == null || cards.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, cards, Math.max(1, batchSize), (ps, card) -> {
+            ps.setString(1, card.getTokenKey() != null ? null : card.getToken()); // BINARY: solo la clave
+            ps.setBytes(2, card.getTokenKey());
+            ps.setString(3, card.getMaskedNumber());
+            ps.setBytes(4, card.getPanFingerprint());
+            ps.setBytes(5, card.getSecrets().toBytes());
+            ps.setLong(6, card.getUser().getId());
+        });
+    }
+
+    /**
+     * Pasa a {@code token_key} (y vacía {@code token}) las filas de texto cuyo token tiene clave
+     * binaria según {@code keyOf}; las demás se dejan como están. En lotes por id.
+     *
+     * @return filas migradas
+     */
+    public int moveTokensToKeys(Function<String, byte[]> keyOf) {
+        int size = Math.max(1, batchSize);
+        int moved = 0;
+        long afterId = 0;
+        List<Map<String, Object>> rows;
+        do {
+            rows = jdbcTemplate.queryForList(
+                    "SELECT id, token FROM cards WHERE token_key IS NULL AND token IS NOT NULL AND id > ? ORDER BY id LIMIT ?",
+                    afterId, size);
+            List<Object[]> updates = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                afterId = ((Number) row.get("id")).longValue();
+                byte[] key = keyOf.apply((String) row.get("token"));
+                if (key != null) updates.add(new Object[]{key, afterId});
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate("UPDATE cards SET token_key = ?, token = NULL WHERE id = ? AND token_key IS NULL", updates);
+                moved += updates.size();
+            }
+        } while (rows.size() == size);
+        return moved;
+    }
+}
@@ -1,7 +1,12 @@
 package com.challenge.tokenizacion_app.repository;
 
 import com.challenge.tokenizacion_app.model.entity.Card;
+import com.challenge.tokenizacion_app.repository.projection.CardOwnership;
+import com.challenge.tokenizacion_app.repository.projection.CardSummary;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -9,5 +14,39 @@ import java.util.Optional;
 public interface CardRepository extends JpaRepository<Card, Long> {
     List<Card> findByUserId(Long userId);
     Optional<Card> findByToken(String token);
-}
+    boolean existsByToken(String token);
+
+    // Solo id + dueño (usa la FK user_id, sin join ni descifrado)
+    @Query("""
+        select new com.challenge.tokenizacion_app.repository.projection.CardOwnership(c.id, c.user.id)
+        from Card c
+        where c.token = :token
+    """)
+    Optional<CardOwnership> findOwnershipByToken(@Param("token") String token);
+
+    // Igual, por el índice binario de 16 bytes (tokenization.token.storage=BINARY)
+    @Query("""
+        select new com.challenge.tokenizacion_app.repository.projection.CardOwnership(c.id, c.user.id)
+        from Card c
+        where c.tokenKey = :key
+    """)
+    Optional<CardOwnership> findOwnershipByTokenKey(@Param("key") byte[] key);
 
+    // Tarjeta del usuario con la misma huella de PAN (índice user_id, pan_fingerprint)
+    @Query("""
+        select new com.challenge.tokenizacion_app.repository.projection.CardSummary(c.id, c.token, c.tokenKey, c.maskedNumber)
+        from Card c
+        where c.user.id = :userId and c.panFingerprint = :fingerprint
+        order by c.id
+    """)
+    List<CardSummary> findByFingerprint(@Param("userId") Long userId, @Param("fingerprint") byte[] fingerprint, Limit limit);
+
+    // Página keyset de las tarjetas de un usuario (índice user_id, id); sin columnas cifradas
+    @Query("""
+        select new com.challenge.tokenizacion_app.repository.projection.CardSummary(c.id, c.token, c.tokenKey, c.maskedNumber)
+        from Card c
+        where c.user.id = :userId and c.id > :afterId
+        order by c.id
+    """)
+    List<CardSummary> findPageByUserId(@Param("userId") Long userId, @Param("afterId") long afterId, Limit limit);
+}
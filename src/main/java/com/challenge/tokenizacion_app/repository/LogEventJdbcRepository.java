@@ -0,0 +1,137 @@
+package com.challenge.tokenizacion_app.repository;
+
+import com.challenge.tokenizacion_app.model.entity.LogEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Escritura de eventos de auditoría en lotes JDBC (multi-row), sin pasar por el EntityManager,
+ * consultas filtradas con paginación keyset sobre (timestamp, id) y lectura en streaming.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LogEventJdbcRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO logs (id, event_type, message, user_id, timestamp) VALUES (?, ?, ?, ?, ?)";
+
+    static final RowMapper<LogEvent> ROW_MAPPER = (rs, i) -> LogEvent.builder()
+            .id(rs.getObject("id", UUID.class))
+            .eventType(rs.getString("event_type"))
+            .message(rs.getString("message"))
+            .userId(rs.getObject("user_id", Long.class))
+            .timestamp(rs.getObject("timestamp", LocalDateTime.class))
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${tokenization.batch.jdbc-batch-size:500}")
+    private int batchSize;
+
+    public void insertAll(List<LogEvent> events) {
+        if (events == null || events.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, Math.max(1, batchSize), (ps, e) -> {
+            ps.setObject(1, e.getId());
+            ps.setString(2, e.getEventType());
+            ps.setString(3, e.getMessage());
+            if (e.getUserId() != null) ps.setLong(4, e.getUserId());
+            else ps.setNull(4, Types.BIGINT);
+            ps.setTimestamp(5, e.getTimestamp() != null ? Timestamp.valueOf(e.getTimestamp()) : null);
+        });
+    }
+
+    /**
+     * Eventos más recientes primero, filtrados y a partir de la posición (afterTs, afterId)
+     * exclusiva. Solo se agregan al WHERE los filtros presentes, para que el planner use
+     * el índice compuesto que corresponda (ver {@code LogEvent}).
+     *
+     * @param limit filas a traer (el llamador pide page+1 para saber si hay más)
+     */
+    public List<LogEvent> findPage(Long userId, String eventType,
+                                   LocalDateTime from, LocalDateTime to,
+                                   LocalDateTime afterTs, UUID afterId, int limit) {
+        List<Object> args = new ArrayList<>(8);
+        StringBuilder sql = filteredSelect(userId, eventType, from, to, args);
+        if (afterTs != null && afterId != null) {
+            sql.append(" AND (timestamp, id) < (?, ?)");
+            args.add(Timestamp.valueOf(afterTs));
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY timestamp DESC, id DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * Recorre todos los eventos del filtro en orden (timestamp, id) con un cursor forward-only
+     * y fetch size fijo: nunca se materializa la lista completa. En PostgreSQL el cursor solo
+     * se respeta dentro de una transacción (autocommit=false); en H2 se activa la ejecución
+     * perezosa durante la consulta.
+     */
+    public void streamAll(Long userId, String eventType, LocalDateTime from, LocalDateTime to,
+                          int fetchSize, RowCallbackHandler handler) {
+        List<Object> args = new ArrayList<>(4);
+        String sql = filteredSelect(userId, eventType, from, to, args)
+                .append(" ORDER BY timestamp, id").toString();
+
+        jdbcTemplate.execute((Connection con) -> {
+            boolean h2 = "H2".equalsIgnoreCase(con.getMetaData().getDatabaseProductName());
+            if (h2) setH2Lazy(con, true);
+            try (PreparedStatement ps = con.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(fetchSize);
+                for (int i = 0; i < args.size(); i++) ps.setObject(i + 1, args.get(i));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) handler.processRow(rs);
+                }
+            } finally {
+                if (h2) setH2Lazy(con, false);
+            }
+            return null;
+        });
+    }
+
+    private static void setH2Lazy(Connection con, boolean lazy) throws java.sql.SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("SET LAZY_QUERY_EXECUTION " + (lazy ? "TRUE" : "FALSE"));
+        }
+    }
+
+    private static StringBuilder filteredSelect(Long userId, String eventType,
+                                                LocalDateTime from, LocalDateTime to, List<Object> args) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT id, event_type, message, user_id, timestamp FROM logs WHERE 1=1");
+        if (userId != null) {
+            sql.append(" AND user_id = ?");
+            args.add(userId);
+        }
+        if (eventType != null) {
+            sql.append(" AND event_type = ?");
+            args.add(eventType);
+        }
+        if (from != null) {
+            sql.append(" AND timestamp >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND timestamp < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        return sql;
+    }
+}
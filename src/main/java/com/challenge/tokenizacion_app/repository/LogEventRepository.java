@@ -3,6 +3,8 @@ package com.challenge.tokenizacion_app.repository;
 import com.challenge.tokenizacion_app.model.entity.LogEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface LogEventRepository extends JpaRepository<LogEvent, String> {
+import java.util.UUID;
+
+public interface LogEventRepository extends JpaRepository<LogEvent, UUID> {
 }
 
@@ -1,10 +1,16 @@
 package com.challenge.tokenizacion_app.repository;
 
+import com.challenge.tokenizacion_app.dto.OrderDTO;
 import com.challenge.tokenizacion_app.model.entity.Order;
+import com.challenge.tokenizacion_app.repository.projection.OrderPaymentView;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -17,4 +23,89 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
         where o.id = :id
     """)
     Optional<Order> findByIdWithItems(@Param("id") Long id);
+
+    // Polling de estado: solo columnas escalares, sin cargar la entidad
+    @Query("""
+        select new com.challenge.tokenizacion_app.dto.OrderDTO(o.id, o.status, o.attempts)
+        from Order o
+        where o.id = :id
+    """)
+    Optional<OrderDTO> findStatusById(@Param("id") Long id);
+
+    @Query("""
+        select new com.challenge.tokenizacion_app.repository.projection.OrderPaymentView(
+            o.id, o.status, o.paymentState, o.paymentReference)
+        from Order o
+        where o.id = :id
+    """)
+    Optional<OrderPaymentView> findPaymentView(@Param("id") Long id);
+
+    // Inicio del cobro (fase 2): solo si la orden sigue PENDING y nadie la cobró ni la venció antes
+    @Modifying
+    @Query("""
+        update Order o
+        set o.paymentState = 'CHARGING', o.paymentStartedAt = :now
+        where o.id = :id and o.status = 'PENDING' and o.paymentState = 'NONE'
+    """)
+    int markCharging(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Confirmación de la fase 3: solo desde PENDING (idempotente ante dobles confirmaciones)
+    @Modifying
+    @Query("""
+        update Order o
+        set o.status = :status, o.attempts = :attempts, o.paymentState = :paymentState,
+            o.paymentReference = :reference
+        where o.id = :id and o.status = 'PENDING'
+    """)
+    int finalizeIfPending(@Param("id") Long id, @Param("status") String status, @Param("attempts") int attempts,
+                          @Param("paymentState") String paymentState, @Param("reference") String reference);
+
+    // Vencimiento: solo si el estado del cobro no cambió desde que se leyó y no hay un cobro iniciado después de :cutoff
+    @Modifying
+    @Query("""
+        update Order o
+        set o.status = 'REJECTED', o.paymentState = :newState
+        where o.id = :id and o.status = 'PENDING'
+          and coalesce(o.paymentState, 'UNKNOWN') = :expected
+          and (o.paymentStartedAt is null or o.paymentStartedAt <= :cutoff)
+    """)
+    int expireIfPending(@Param("id") Long id, @Param("expected") String expected,
+                        @Param("newState") String newState, @Param("cutoff") LocalDateTime cutoff);
+
+    // Cobro aprobado que no se pudo registrar ni devolver: queda para el barrido (nunca sobre una orden APPROVED)
+    @Modifying
+    @Query("""
+        update Order o
+        set o.paymentState = 'VOID_PENDING', o.paymentReference = :reference
+        where o.id = :id and o.status <> 'APPROVED'
+    """)
+    int markVoidPending(@Param("id") Long id, @Param("reference") String reference);
+
+    @Modifying
+    @Query("""
+        update Order o
+        set o.paymentState = 'VOIDED'
+        where o.id = :id and o.paymentState = 'VOID_PENDING'
+    """)
+    int markVoided(@Param("id") Long id);
+
+    // PENDING sin confirmar desde antes de :cutoff (reserva o inicio del cobro; sin fecha = anteriores a la columna)
+    @Query("""
+        select o.id
+        from Order o
+        where o.status = 'PENDING'
+          and (coalesce(o.paymentStartedAt, o.createdAt) < :cutoff or o.createdAt is null)
+          and o.id > :afterId
+        order by o.id
+    """)
+    List<Long> findStalePendingIds(@Param("cutoff") LocalDateTime cutoff, @Param("afterId") long afterId, Limit limit);
+
+    // Rechazadas con un cobro que todavía falta anular en la pasarela
+    @Query("""
+        select o.id
+        from Order o
+        where o.status = 'REJECTED' and o.paymentState = 'VOID_PENDING' and o.id > :afterId
+        order by o.id
+    """)
+    List<Long> findVoidPendingIds(@Param("afterId") long afterId, Limit limit);
 }
@@ -1,8 +1,14 @@
 package com.challenge.tokenizacion_app.repository;
 
 
+import com.challenge.tokenizacion_app.dto.ProductDTO;
 import com.challenge.tokenizacion_app.model.entity.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import java.util.List;
 
 public interface ProductRepository extends JpaRepository<Product, Long> {
@@ -12,6 +18,44 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
 
     // Buscar productos por nombre que contengan texto ignorando mayúsculas/minúsculas
     List<Product> findByNameContainingIgnoreCase(String name);
-}
 
+    // Catálogo visible paginado por (name, id) cuando el snapshot está deshabilitado; sin entidades
+    @Query("""
+        select new com.challenge.tokenizacion_app.dto.ProductDTO(p.id, p.name, p.price, p.stock)
+        from Product p
+        where p.stock >= :minStock
+        order by p.name, p.id
+    """)
+    List<ProductDTO> findVisiblePage(@Param("minStock") int minStock, Limit limit);
+
+    @Query("""
+        select new com.challenge.tokenizacion_app.dto.ProductDTO(p.id, p.name, p.price, p.stock)
+        from Product p
+        where p.stock >= :minStock
+          and (p.name > :afterName or (p.name = :afterName and p.id > :afterId))
+        order by p.name, p.id
+    """)
+    List<ProductDTO> findVisiblePageAfter(@Param("minStock") int minStock, @Param("afterName") String afterName,
+                                          @Param("afterId") long afterId, Limit limit);
 
+    /**
+     * Descuento atómico y condicional: 1 si había stock suficiente, 0 si no.
+     * Sube la versión para no romper a quien use el @Version de Product.
+     */
+    @Modifying
+    @Query("""
+        update Product p
+        set p.stock = p.stock - :qty, p.version = p.version + 1
+        where p.id = :id and p.stock >= :qty
+    """)
+    int decrementStockIfAvailable(@Param("id") Long id, @Param("qty") int qty);
+
+    /** Devuelve stock (compensación de una reserva). */
+    @Modifying
+    @Query("""
+        update Product p
+        set p.stock = p.stock + :qty, p.version = p.version + 1
+        where p.id = :id
+    """)
+    int incrementStock(@Param("id") Long id, @Param("qty") int qty);
+}
@@ -1,10 +1,24 @@
 package com.challenge.tokenizacion_app.repository;
 
+import com.challenge.tokenizacion_app.dto.UserDTO;
 import com.challenge.tokenizacion_app.model.entity.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByEmail(String email);
     boolean existsByPhone(String phone);
-}
 
+    // Página keyset por PK: solo las columnas del DTO, sin entidades administradas
+    @Query("""
+        select new com.challenge.tokenizacion_app.dto.UserDTO(u.id, u.name, u.email, u.phone, u.address)
+        from User u
+        where u.id > :afterId
+        order by u.id
+    """)
+    List<UserDTO> findPageAfter(@Param("afterId") long afterId, Limit limit);
+}
@@ -0,0 +1,7 @@
+package com.challenge.tokenizacion_app.repository.projection;
+
+/**
+ * Proyección mínima de una tarjeta para autorizar su uso: no hidrata la entidad
+ * ni descifra columnas.
+ */
+public record CardOwnership(Long cardId, Long userId) {}
@@ -0,0 +1,15 @@
+package com.challenge.tokenizacion_app.repository.projection;
+
+import com.challenge.tokenizacion_app.security.token.CardTokenIssuer;
+
+/**
+ * Columnas públicas de una tarjeta para listados: sin cvv/expiración, así que no se
+ * descifra nada ni se hidrata la entidad.
+ */
+public record CardSummary(Long id, String token, String maskedNumber) {
+
+    /** Desde las dos columnas del token: con storage=BINARY el texto se deriva de token_key. */
+    public CardSummary(Long id, String token, byte[] tokenKey, String maskedNumber) {
+        this(id, token != null ? token : CardTokenIssuer.tokenOf(tokenKey), maskedNumber);
+    }
+}
@@ -0,0 +1,5 @@
+package com.challenge.tokenizacion_app.repository.projection;
+
+/** Estado de la orden y de su cobro, sin cargar la entidad. */
+public record OrderPaymentView(Long id, String status, String paymentState, String paymentReference) {
+}
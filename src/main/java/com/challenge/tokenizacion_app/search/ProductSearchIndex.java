@@ -0,0 +1,238 @@
+package com.challenge.tokenizacion_app.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido de trigramas sobre el nombre de los productos, en memoria.
+ * <p>
+ * - Normalización: minúsculas, sin tildes ni diéresis (NFD sin marcas) y sin signos; "Cámara"
+ *   y "camara" son el mismo término. La ñ también queda como n.
+ * - Búsqueda de subcadena: intersección de las listas de los trigramas de la consulta (de la
+ *   más corta a la más larga) y verificación con {@code contains} para descartar falsos
+ *   positivos. Consultas de 1-2 caracteres recorren los nombres normalizados (sin DB).
+ * - Ranking: nombre exacto, luego prefijo del nombre, prefijo de una palabra y por último
+ *   subcadena; dentro de cada grupo, posición más temprana, nombre más corto y alfabético.
+ * - Se actualiza por producto ({@link #upsert}) al crear/editar; una recarga completa periódica
+ *   ({@code search.products.reindex-interval}) cubre cambios hechos fuera de la app.
+ * <p>
+ * La carga inicial corre en segundo plano; hasta que termina {@link #isReady()} es false y
+ * el llamador debe ir a la DB.
+ */
+@Component
+@Slf4j
+public class ProductSearchIndex implements SmartLifecycle {
+
+    static final int GRAM = 3;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALNUM = Pattern.compile("[^\\p{IsAlphabetic}\\p{IsDigit}]+");
+
+    /** Página de ids ya ordenados por relevancia, con el total de coincidencias. */
+    public record Hits(List<Long> ids, int total) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Duration reindexInterval;
+
+    /** id -> nombre normalizado */
+    private final Map<Long, String> names = new ConcurrentHashMap<>();
+    /** trigrama -> ids */
+    private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService loader;
+    private volatile boolean ready;
+    private volatile boolean running;
+
+    public ProductSearchIndex(JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${search.products.enabled:true}") boolean enabled,
+                              @Value("${search.products.reindex-interval:10m}") Duration reindexInterval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.reindexInterval = reindexInterval;
+        Gauge.builder("search.products.index.size", names, Map::size).register(meterRegistry);
+        Gauge.builder("search.products.index.grams", postings, Map::size).register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /** Alta o cambio de nombre: solo se tocan los trigramas que cambian. */
+    public void upsert(Long id, String name) {
+        if (id == null || name == null) return;
+        String normalized = normalize(name);
+        String previous = names.put(id, normalized);
+        if (normalized.equals(previous)) return;
+
+        Set<String> added = grams(normalized);
+        if (previous != null) {
+            Set<String> removed = grams(previous);
+            removed.removeAll(added);
+            removed.forEach(g -> unpost(g, id));
+        }
+        added.forEach(g -> postings.computeIfAbsent(g, k -> ConcurrentHashMap.newKeySet()).add(id));
+    }
+
+    public void remove(Long id) {
+        String previous = names.remove(id);
+        if (previous != null) grams(previous).forEach(g -> unpost(g, id));
+    }
+
+    /**
+     * @param query   texto libre (se normaliza igual que los nombres)
+     * @param visible filtro aplicado antes de paginar (p.ej. producto con stock visible)
+     */
+    public Hits search(String query, Predicate<Long> visible, int page, int size) {
+        String q = normalize(query);
+        if (q.isEmpty()) return new Hits(List.of(), 0);
+
+        List<Ranked> matches = new ArrayList<>();
+        for (Long id : candidates(q)) {
+            String name = names.get(id);
+            if (name == null) continue; // borrado durante la búsqueda
+            int at = name.indexOf(q);
+            if (at < 0 || !visible.test(id)) continue;
+            matches.add(new Ranked(id, rank(name, q, at), at, name));
+        }
+        matches.sort(Ranked.ORDER);
+
+        int from = Math.min(matches.size(), page * size);
+        int to = Math.min(matches.size(), from + size);
+        List<Long> ids = new ArrayList<>(to - from);
+        for (Ranked r : matches.subList(from, to)) ids.add(r.id);
+        return new Hits(ids, matches.size());
+    }
+
+    private Collection<Long> candidates(String q) {
+        if (q.length() < GRAM) return names.keySet(); // muy corta para trigramas: se verifica todo
+
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String g : grams(q)) {
+            Set<Long> ids = postings.get(g);
+            if (ids == null) return List.of(); // un trigrama sin postings: no hay coincidencias
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> result = new HashSet<>(lists.get(0));
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.retainAll(lists.get(i));
+        }
+        return result;
+    }
+
+    /** 0 = exacto, 1 = prefijo del nombre, 2 = prefijo de palabra, 3 = subcadena. */
+    private static int rank(String name, String q, int at) {
+        if (at == 0) return name.length() == q.length() ? 0 : 1;
+        if (name.charAt(at - 1) == ' ') return 2;
+        int word = name.indexOf(" " + q);
+        return word >= 0 ? 2 : 3;
+    }
+
+    private record Ranked(Long id, int rank, int position, String name) {
+        static final Comparator<Ranked> ORDER = Comparator.comparingInt(Ranked::rank)
+                .thenComparingInt(Ranked::position)
+                .thenComparingInt(r -> r.name.length())
+                .thenComparing(Ranked::name)
+                .thenComparing(Ranked::id);
+    }
+
+    private void unpost(String gram, Long id) {
+        postings.computeIfPresent(gram, (g, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /** Minúsculas, sin marcas diacríticas, separadores colapsados a un espacio. */
+    static String normalize(String text) {
+        if (text == null) return "";
+        String s = Normalizer.normalize(text, Normalizer.Form.NFD);
+        s = MARKS.matcher(s).replaceAll("");
+        s = NON_ALNUM.matcher(s.toLowerCase(Locale.ROOT)).replaceAll(" ");
+        return s.strip();
+    }
+
+    /** Trigramas del texto normalizado completo (incluye espacios: sirve para frases). */
+    static Set<String> grams(String normalized) {
+        Set<String> out = new HashSet<>();
+        for (int i = 0; i + GRAM <= normalized.length(); i++) {
+            out.add(normalized.substring(i, i + GRAM));
+        }
+        return out;
+    }
+
+    /* ----------------- Carga ----------------- */
+
+    /** Recarga completa: indexa lo que hay en la DB y retira lo que ya no está. */
+    void reload() {
+        Set<Long> seen = new HashSet<>();
+        jdbcTemplate.query("SELECT id, name FROM products", rs -> {
+            long id = rs.getLong(1);
+            seen.add(id);
+            upsert(id, rs.getString(2));
+        });
+        for (Long id : List.copyOf(names.keySet())) {
+            if (!seen.contains(id)) remove(id);
+        }
+    }
+
+    private void reloadQuietly() {
+        try {
+            long t0 = System.nanoTime();
+            reload();
+            if (!ready) {
+                ready = true;
+                log.info("Índice de búsqueda listo: {} productos, {} trigramas en {} ms",
+                        names.size(), postings.size(), (System.nanoTime() - t0) / 1_000_000);
+            }
+        } catch (Exception e) {
+            log.warn("Fallo cargando el índice de búsqueda (se reintenta): {}", e.getMessage());
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        loader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "product-search-index");
+            t.setDaemon(true);
+            return t;
+        });
+        // Carga inicial inmediata; mientras tanto las búsquedas van a la DB
+        long every = Math.max(1, reindexInterval.toMillis());
+        loader.scheduleWithFixedDelay(this::reloadQuietly, 0, every, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        ready = false;
+        loader.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,256 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Provider;
+import java.security.SecureRandom;
+
+/**
+ * Motor AES-GCM reutilizable para cifrar/descifrar strings cortos (cvv, expiración).
+ * <p>
+ * Formato: {@code <prefijo>} + Base64(nonce(12) || ciphertext || tag(16)), compatible con
+ * lo que ya escribía {@link AesGcmStringCryptoConverter}.
+ * <p>
+ * Cada hilo reutiliza su propio {@link Cipher}, {@link SecureRandom} y buffers, así que por
+ * operación solo se asignan el {@link GCMParameterSpec} y el String de salida.
+ */
+public final class AesGcmEngine {
+
+    static final int NONCE_LEN = 12;
+    static final int TAG_LEN = 16;
+    private static final int TAG_LEN_BITS = TAG_LEN * 8;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final byte[] B64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] B64_INV = new int[128];
+
+    static {
+        java.util.Arrays.fill(B64_INV, -1);
+        for (int i = 0; i < B64.length; i++) B64_INV[B64[i]] = i;
+    }
+
+    // Provider resuelto una vez: evita la búsqueda en la lista de providers en cada getInstance
+    private static final Provider PROVIDER = resolveProvider();
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private final SecretKey key;
+    private final String prefix;
+    private final byte[] prefixBytes;
+
+    public AesGcmEngine(SecretKey key, String prefix) {
+        this.key = key;
+        this.prefix = prefix;
+        this.prefixBytes = prefix.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public String prefix() {
+        return prefix;
+    }
+
+    public String encrypt(String plain) {
+        if (plain == null) return null;
+        State st = STATE.get();
+        try {
+            int plainLen = st.encodeUtf8(plain);
+            int sealedLen = NONCE_LEN + plainLen + TAG_LEN;
+            byte[] buf = st.sealed(sealedLen);
+
+            st.rng.nextBytes(st.nonce);
+            System.arraycopy(st.nonce, 0, buf, 0, NONCE_LEN);
+
+            st.cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LEN_BITS, st.nonce));
+            st.cipher.doFinal(st.plain, 0, plainLen, buf, NONCE_LEN);
+
+            return encodeBase64(buf, sealedLen);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error cifrando campo", e);
+        }
+    }
+
+    public String decrypt(String dbData) {
+        if (dbData == null) return null;
+        if (!dbData.startsWith(prefix)) {
+            throw new IllegalStateException("Versión de cifrado desconocida");
+        }
+        State st = STATE.get();
+        try {
+            int sealedLen = decodeBase64(dbData, prefix.length(), st);
+            if (sealedLen < NONCE_LEN + TAG_LEN) {
+                throw new IllegalStateException("Dato cifrado truncado");
+            }
+            byte[] buf = st.sealed;
+            byte[] out = st.plain(sealedLen - NONCE_LEN - TAG_LEN);
+
+            st.cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LEN_BITS, buf, 0, NONCE_LEN));
+            int n = st.cipher.doFinal(buf, NONCE_LEN, sealedLen - NONCE_LEN, out, 0);
+            return new String(out, 0, n, StandardCharsets.UTF_8);
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error descifrando campo", e);
+        }
+    }
+
+    /* ----------------- Registros binarios ----------------- */
+
+    /**
+     * Sella {@code plain} como {@code header || nonce(12) || ciphertext || tag(16)}.
+     * El header y {@code aad} quedan autenticados pero no cifrados: abrir el registro con
+     * otro header o con otra {@code aad} falla.
+     */
+    public byte[] seal(byte[] header, byte[] plain, int plainLen, byte[] aad) {
+        State st = STATE.get();
+        try {
+            byte[] out = new byte[header.length + NONCE_LEN + plainLen + TAG_LEN];
+            System.arraycopy(header, 0, out, 0, header.length);
+            st.rng.nextBytes(st.nonce);
+            System.arraycopy(st.nonce, 0, out, header.length, NONCE_LEN);
+
+            st.cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LEN_BITS, st.nonce));
+            st.cipher.updateAAD(header);
+            if (aad != null) st.cipher.updateAAD(aad);
+            st.cipher.doFinal(plain, 0, plainLen, out, header.length + NONCE_LEN);
+            return out;
+        } catch (Exception e) {
+            throw new IllegalStateException("Error cifrando registro", e);
+        }
+    }
+
+    /** Inverso de {@link #seal}: devuelve el texto plano (el llamador debe limpiarlo al terminar). */
+    public byte[] open(byte[] record, int headerLen, byte[] aad) {
+        int sealedLen = record.length - headerLen - NONCE_LEN;
+        if (sealedLen < TAG_LEN) {
+            throw new IllegalStateException("Registro cifrado truncado");
+        }
+        State st = STATE.get();
+        try {
+            byte[] out = new byte[sealedLen - TAG_LEN];
+            st.cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LEN_BITS, record, headerLen, NONCE_LEN));
+            st.cipher.updateAAD(record, 0, headerLen);
+            if (aad != null) st.cipher.updateAAD(aad);
+            st.cipher.doFinal(record, headerLen + NONCE_LEN, sealedLen, out, 0);
+            return out;
+        } catch (AEADBadTagException e) {
+            throw new IllegalStateException("Registro cifrado alterado o de otra tarjeta", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error descifrando registro", e);
+        }
+    }
+
+    /* ----------------- Base64 sin buffers intermedios ----------------- */
+
+    private String encodeBase64(byte[] src, int len) {
+        int outLen = prefixBytes.length + 4 * ((len + 2) / 3);
+        byte[] out = new byte[outLen];
+        System.arraycopy(prefixBytes, 0, out, 0, prefixBytes.length);
+        int o = prefixBytes.length;
+        int i = 0;
+        int full = len - len % 3;
+        while (i < full) {
+            int v = (src[i++] & 0xff) << 16 | (src[i++] & 0xff) << 8 | (src[i++] & 0xff);
+            out[o++] = B64[v >>> 18];
+            out[o++] = B64[(v >>> 12) & 0x3f];
+            out[o++] = B64[(v >>> 6) & 0x3f];
+            out[o++] = B64[v & 0x3f];
+        }
+        int rem = len - full;
+        if (rem == 1) {
+            int v = (src[i] & 0xff) << 16;
+            out[o++] = B64[v >>> 18];
+            out[o++] = B64[(v >>> 12) & 0x3f];
+            out[o++] = '=';
+            out[o] = '=';
+        } else if (rem == 2) {
+            int v = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+            out[o++] = B64[v >>> 18];
+            out[o++] = B64[(v >>> 12) & 0x3f];
+            out[o++] = B64[(v >>> 6) & 0x3f];
+            out[o] = '=';
+        }
+        // Todo es ASCII: con compact strings la copia a String es directa (LATIN1)
+        return new String(out, 0, outLen, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int decodeBase64(String s, int from, State st) {
+        int end = s.length();
+        while (end > from && s.charAt(end - 1) == '=') end--;
+        int chars = end - from;
+        if (chars % 4 == 1) throw new IllegalStateException("Base64 inválido");
+        int len = chars / 4 * 3 + (chars % 4 == 0 ? 0 : chars % 4 - 1);
+        byte[] out = st.sealed(len);
+
+        int o = 0;
+        int acc = 0;
+        int bits = 0;
+        for (int i = from; i < end; i++) {
+            char c = s.charAt(i);
+            int v = c < 128 ? B64_INV[c] : -1;
+            if (v < 0) throw new IllegalStateException("Base64 inválido");
+            acc = (acc << 6) | v;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                out[o++] = (byte) (acc >>> bits);
+            }
+        }
+        return len;
+    }
+
+    private static Provider resolveProvider() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION).getProvider();
+        } catch (Exception e) {
+            throw new IllegalStateException("AES/GCM no disponible en esta JVM", e);
+        }
+    }
+
+    /* ----------------- Estado por hilo ----------------- */
+
+    private static final class State {
+        final Cipher cipher;
+        final SecureRandom rng = new SecureRandom();
+        final byte[] nonce = new byte[NONCE_LEN];
+        byte[] sealed = new byte[128];
+        byte[] plain = new byte[64];
+
+        State() {
+            try {
+                cipher = Cipher.getInstance(TRANSFORMATION, PROVIDER);
+            } catch (Exception e) {
+                throw new IllegalStateException("No se pudo crear Cipher AES/GCM", e);
+            }
+        }
+
+        byte[] sealed(int len) {
+            if (sealed.length < len) sealed = new byte[Math.max(len, sealed.length * 2)];
+            return sealed;
+        }
+
+        byte[] plain(int len) {
+            if (plain.length < len) plain = new byte[Math.max(len, plain.length * 2)];
+            return plain;
+        }
+
+        /** Codifica a UTF-8 en el buffer del hilo; camino rápido para ASCII (el caso cvv/fecha). */
+        int encodeUtf8(String s) {
+            int n = s.length();
+            byte[] out = plain(n);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                    out = plain(utf8.length);
+                    System.arraycopy(utf8, 0, out, 0, utf8.length);
+                    return utf8.length;
+                }
+                out[i] = (byte) c;
+            }
+            return n;
+        }
+    }
+}
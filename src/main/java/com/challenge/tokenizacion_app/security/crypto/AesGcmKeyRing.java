@@ -0,0 +1,187 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Llavero de claves AES-GCM versionadas.
+ * <p>
+ * El prefijo del valor cifrado ({@code v1:}, {@code v2:}, ...) selecciona la clave. Se escribe
+ * siempre con la versión más nueva y se lee con cualquiera de las registradas, lo que permite
+ * rotar la clave sin una pasada offline sobre {@code cards}.
+ * <p>
+ * Fuentes (ENV o propiedades del sistema, ver {@code CryptoKeyBootstrap}):
+ * <ul>
+ *   <li>{@code AES_GCM_KEY_BASE64}: clave v1 (compatibilidad con lo ya cifrado).</li>
+ *   <li>{@code AES_GCM_KEYS}: claves adicionales, p.ej. {@code v2:<base64>,v3:<base64>}.</li>
+ * </ul>
+ */
+public final class AesGcmKeyRing {
+
+    private static volatile AesGcmKeyRing INSTANCE;
+
+    static final int RECORD_HEADER_LEN = 2;
+
+    private final Map<Integer, AesGcmEngine> engines;
+    private final LongAdder encryptions = new LongAdder();
+    private final LongAdder decryptions = new LongAdder();
+    private final int currentVersion;
+    private final AesGcmEngine current;
+
+    AesGcmKeyRing(Map<Integer, SecretKeySpec> keys) {
+        if (keys.isEmpty()) {
+            throw new IllegalStateException(
+                    "AES_GCM_KEY_BASE64 no configurado (base64 de 16/24/32 bytes).");
+        }
+        TreeMap<Integer, AesGcmEngine> map = new TreeMap<>();
+        keys.forEach((v, k) -> map.put(v, new AesGcmEngine(k, prefixOf(v))));
+        this.engines = Collections.unmodifiableMap(map);
+        this.currentVersion = map.lastKey();
+        this.current = map.lastEntry().getValue();
+    }
+
+    /** Llavero compartido, cargado perezosamente desde ENV/propiedades del sistema. */
+    public static AesGcmKeyRing instance() {
+        AesGcmKeyRing local = INSTANCE;
+        if (local == null) {
+            synchronized (AesGcmKeyRing.class) {
+                local = INSTANCE;
+                if (local == null) {
+                    INSTANCE = local = new AesGcmKeyRing(loadKeys());
+                }
+            }
+        }
+        return local;
+    }
+
+    public int currentVersion() {
+        return currentVersion;
+    }
+
+    public String currentPrefix() {
+        return current.prefix();
+    }
+
+    public String encrypt(String plain) {
+        if (plain == null) return null;
+        encryptions.increment();
+        return current.encrypt(plain);
+    }
+
+    public String decrypt(String dbData) {
+        if (dbData == null) return null;
+        decryptions.increment();
+        return engineFor(dbData).decrypt(dbData);
+    }
+
+    /**
+     * Sella un registro binario con la clave vigente. Header de 2 bytes, autenticado:
+     * {@code [formato][versión de clave]}.
+     */
+    public byte[] sealRecord(int format, byte[] plain, int plainLen, byte[] aad) {
+        if (currentVersion > 0xff) {
+            throw new IllegalStateException("Versión de clave fuera de rango para registros binarios");
+        }
+        encryptions.increment();
+        return current.seal(new byte[]{(byte) format, (byte) currentVersion}, plain, plainLen, aad);
+    }
+
+    /** Abre un registro de {@link #sealRecord}; la clave sale del header. */
+    public byte[] openRecord(byte[] record, byte[] aad) {
+        if (record.length < RECORD_HEADER_LEN) {
+            throw new IllegalStateException("Registro cifrado truncado");
+        }
+        AesGcmEngine engine = engines.get(record[1] & 0xff);
+        if (engine == null) {
+            throw new IllegalStateException("Versión de cifrado desconocida");
+        }
+        decryptions.increment();
+        return engine.open(record, RECORD_HEADER_LEN, aad);
+    }
+
+    /** true si el registro está sellado con una versión anterior a la vigente. */
+    public boolean recordNeedsReencryption(byte[] record) {
+        return record != null && record.length >= RECORD_HEADER_LEN && (record[1] & 0xff) != currentVersion;
+    }
+
+    /** Operaciones AES-GCM hechas desde el arranque (para medir qué caminos descifran). */
+    public long encryptions() {
+        return encryptions.sum();
+    }
+
+    public long decryptions() {
+        return decryptions.sum();
+    }
+
+    /** true si el valor está cifrado con una versión anterior a la vigente. */
+    public boolean needsReencryption(String dbData) {
+        return dbData != null && !dbData.startsWith(current.prefix());
+    }
+
+    private AesGcmEngine engineFor(String dbData) {
+        int version = parseVersion(dbData);
+        AesGcmEngine engine = engines.get(version);
+        if (engine == null) {
+            throw new IllegalStateException("Versión de cifrado desconocida");
+        }
+        return engine;
+    }
+
+    static String prefixOf(int version) {
+        return "v" + version + ":";
+    }
+
+    /** Lee "vN:" sin allocations; -1 si el formato no corresponde. */
+    private static int parseVersion(String s) {
+        if (s.length() < 3 || s.charAt(0) != 'v') return -1;
+        int v = 0;
+        for (int i = 1; i < s.length() && i < 8; i++) {
+            char c = s.charAt(i);
+            if (c == ':') return i > 1 ? v : -1;
+            if (c < '0' || c > '9') return -1;
+            v = v * 10 + (c - '0');
+        }
+        return -1;
+    }
+
+    private static Map<Integer, SecretKeySpec> loadKeys() {
+        Map<Integer, SecretKeySpec> keys = new TreeMap<>();
+
+        String v1 = read("AES_GCM_KEY_BASE64");
+        if (!v1.isBlank()) keys.put(1, toKey(v1));
+
+        String extra = read("AES_GCM_KEYS");
+        if (!extra.isBlank()) {
+            for (String entry : extra.split(",")) {
+                String e = entry.trim();
+                if (e.isEmpty()) continue;
+                int version = parseVersion(e);
+                if (version < 1) {
+                    throw new IllegalStateException("Entrada inválida en AES_GCM_KEYS (use vN:<base64>)");
+                }
+                keys.put(version, toKey(e.substring(e.indexOf(':') + 1)));
+            }
+        }
+        return keys;
+    }
+
+    private static String read(String name) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            value = System.getProperty(name, "");
+        }
+        return value == null ? "" : value;
+    }
+
+    private static SecretKeySpec toKey(String b64) {
+        byte[] keyBytes = Base64.getDecoder().decode(b64.trim());
+        if (!(keyBytes.length == 16 || keyBytes.length == 24 || keyBytes.length == 32)) {
+            throw new IllegalStateException("La clave AES debe ser 128/192/256 bits (16/24/32 bytes).");
+        }
+        return new SecretKeySpec(keyBytes, "AES");
+    }
+}
@@ -0,0 +1,10 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+/** Datos sensibles de una tarjeta en claro. Vive solo lo necesario; nunca se loguea. */
+public record CardSecrets(String cvv, String expiryDate) {
+
+    @Override
+    public String toString() {
+        return "CardSecrets[****]";
+    }
+}
@@ -0,0 +1,53 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * Huella del PAN: HMAC-SHA256 con una clave propia ({@code crypto.pan-fingerprint.key-base64}),
+ * distinta de la de AES-GCM. Determinista, así que permite buscar "esta tarjeta ya existe" por
+ * índice sin guardar el número; sin la clave no se puede recorrer el espacio de PANs.
+ * <p>
+ * Cambiar la clave deja de reconocer las tarjetas anteriores (se vuelven a tokenizar una vez).
+ */
+@Component
+public class PanFingerprinter {
+
+    public static final int LENGTH = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    public PanFingerprinter(@Value("${crypto.pan-fingerprint.key-base64:}") String keyBase64) {
+        byte[] raw = keyBase64 == null || keyBase64.isBlank() ? new byte[0] : Base64.getDecoder().decode(keyBase64.trim());
+        if (raw.length < 32) {
+            throw new IllegalStateException("crypto.pan-fingerprint.key-base64 debe tener al menos 32 bytes");
+        }
+        this.key = new SecretKeySpec(raw, ALGORITHM);
+    }
+
+    /** 32 bytes; {@code pan} solo dígitos (ya validado). */
+    public byte[] fingerprint(String pan) {
+        Mac mac = macs.get();
+        for (int i = 0; i < pan.length(); i++) {
+            mac.update((byte) pan.charAt(i)); // ASCII, sin copiar el PAN a un byte[]
+        }
+        return mac.doFinal();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 no disponible", e);
+        }
+    }
+}
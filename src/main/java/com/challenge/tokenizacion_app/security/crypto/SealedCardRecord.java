@@ -0,0 +1,108 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Todos los datos sensibles de una tarjeta sellados en un único registro AES-GCM binario
+ * (columna {@code cards.secrets}, {@code bytea}/{@code VARBINARY}).
+ * <p>
+ * Formato: {@code [formato=1][versión de clave] || nonce(12) || ciphertext || tag(16)}, con el
+ * texto plano empaquetado como {@code [len][cvv][len][expiración]}. Para un cvv de 3 dígitos
+ * son 42 bytes, frente a ~98 de las dos columnas {@code vN:}+Base64, y un solo init de cipher.
+ * <p>
+ * El token de la tarjeta va como datos asociados (AAD): copiar el registro a otra fila hace
+ * fallar el descifrado. Se usa el token y no el id porque el id es IDENTITY y no se conoce
+ * antes del INSERT; el token es igual de único e inmutable.
+ * <p>
+ * Al igual que {@link SealedString}, cargarlo no descifra nada: solo {@link #open(String)}.
+ */
+public final class SealedCardRecord {
+
+    static final int FORMAT_PACKED = 1;
+
+    private final byte[] record;
+
+    private SealedCardRecord(byte[] record) {
+        this.record = record;
+    }
+
+    public static SealedCardRecord seal(CardSecrets secrets, String cardToken) {
+        byte[] cvv = bytes(secrets.cvv());
+        byte[] expiry = bytes(secrets.expiryDate());
+        byte[] plain = new byte[2 + cvv.length + expiry.length];
+        plain[0] = (byte) cvv.length;
+        System.arraycopy(cvv, 0, plain, 1, cvv.length);
+        plain[1 + cvv.length] = (byte) expiry.length;
+        System.arraycopy(expiry, 0, plain, 2 + cvv.length, expiry.length);
+        try {
+            return new SealedCardRecord(
+                    AesGcmKeyRing.instance().sealRecord(FORMAT_PACKED, plain, plain.length, aad(cardToken)));
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    public static SealedCardRecord fromDatabase(byte[] dbData) {
+        return dbData == null ? null : new SealedCardRecord(dbData);
+    }
+
+    /** Descifra (una operación AES-GCM). Falla si el registro no pertenece a {@code cardToken}. */
+    public CardSecrets open(String cardToken) {
+        if (record[0] != FORMAT_PACKED) {
+            throw new IllegalStateException("Formato de registro desconocido: " + record[0]);
+        }
+        byte[] plain = AesGcmKeyRing.instance().openRecord(record, aad(cardToken));
+        try {
+            int cvvLen = plain[0] & 0xff;
+            int expiryLen = plain[1 + cvvLen] & 0xff;
+            return new CardSecrets(
+                    new String(plain, 1, cvvLen, StandardCharsets.UTF_8),
+                    new String(plain, 2 + cvvLen, expiryLen, StandardCharsets.UTF_8));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Registro cifrado mal formado", e);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /** true si está sellado con una clave anterior a la vigente (no descifra). */
+    public boolean needsReencryption() {
+        return AesGcmKeyRing.instance().recordNeedsReencryption(record);
+    }
+
+    /** Bytes para la columna (copia). */
+    public byte[] toBytes() {
+        return record.clone();
+    }
+
+    public int length() {
+        return record.length;
+    }
+
+    private static byte[] bytes(String value) {
+        byte[] b = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xff) throw new IllegalArgumentException("Campo de tarjeta demasiado largo");
+        return b;
+    }
+
+    private static byte[] aad(String cardToken) {
+        if (cardToken == null) throw new IllegalStateException("La tarjeta no tiene token");
+        return ("card:" + cardToken).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof SealedCardRecord other && Arrays.equals(record, other.record));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(record);
+    }
+
+    @Override
+    public String toString() {
+        return "****";
+    }
+}
@@ -0,0 +1,21 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.hibernate.annotations.Immutable;
+
+/** Columna binaria {@code cards.secrets} ↔ {@link SealedCardRecord}, sin descifrar al leer. */
+@Converter
+@Immutable
+public class SealedCardRecordConverter implements AttributeConverter<SealedCardRecord, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(SealedCardRecord attribute) {
+        return attribute == null ? null : attribute.toBytes();
+    }
+
+    @Override
+    public SealedCardRecord convertToEntityAttribute(byte[] dbData) {
+        return SealedCardRecord.fromDatabase(dbData);
+    }
+}
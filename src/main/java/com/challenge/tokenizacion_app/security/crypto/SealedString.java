@@ -0,0 +1,72 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import java.util.Objects;
+
+/**
+ * Valor sensible (cvv, expiración) que viaja cifrado y solo se descifra al llamar
+ * {@link #reveal()}.
+ * <p>
+ * Al cargar una entidad, {@link SealedStringConverter} envuelve el texto de la columna sin
+ * tocar el cipher; listar o autorizar tarjetas no paga ningún AES-GCM. El texto plano no se
+ * retiene: cada {@code reveal()} descifra de nuevo, así que solo debe usarse donde de verdad
+ * hace falta el dato.
+ * <p>
+ * Inmutable: Hibernate compara por referencia en el dirty checking y no necesita descifrar
+ * para saber que la columna no cambió.
+ */
+public final class SealedString {
+
+    private final String plain;       // solo en valores creados por la app (alta de tarjeta)
+    private volatile String sealed;   // texto de la columna ("vN:" + Base64)
+
+    private SealedString(String plain, String sealed) {
+        this.plain = plain;
+        this.sealed = sealed;
+    }
+
+    /** Valor nuevo en claro; se cifra una sola vez, al escribirse. */
+    public static SealedString of(String plain) {
+        return plain == null ? null : new SealedString(plain, null);
+    }
+
+    /** Valor leído de la DB, todavía cifrado. */
+    public static SealedString fromDatabase(String dbData) {
+        return dbData == null ? null : new SealedString(null, dbData);
+    }
+
+    /** Texto plano. Descifra en cada llamada cuando el valor viene de la DB. */
+    public String reveal() {
+        return plain != null ? plain : AesGcmKeyRing.instance().decrypt(sealed);
+    }
+
+    /** Texto para la columna; un valor nuevo se cifra la primera vez y se reutiliza. */
+    public String ciphertext() {
+        String s = sealed;
+        if (s == null) {
+            synchronized (this) {
+                s = sealed;
+                if (s == null) sealed = s = AesGcmKeyRing.instance().encrypt(plain);
+            }
+        }
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SealedString other)) return false;
+        // Sin descifrar: dos valores de la DB se comparan por su texto cifrado
+        if (plain == null && other.plain == null) return Objects.equals(sealed, other.sealed);
+        return plain != null && plain.equals(other.plain);
+    }
+
+    @Override
+    public int hashCode() {
+        return plain != null ? plain.hashCode() : Objects.hashCode(sealed);
+    }
+
+    @Override
+    public String toString() {
+        return "****"; // nunca el dato, ni cifrado
+    }
+}
@@ -0,0 +1,25 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Converter de descifrado diferido: la lectura solo envuelve el texto cifrado en un
+ * {@link SealedString}; el AES-GCM ocurre en {@link SealedString#reveal()}.
+ * Escribe con la clave vigente del {@link AesGcmKeyRing}, igual que {@link AesGcmStringCryptoConverter}.
+ */
+@Converter
+@Immutable
+public class SealedStringConverter implements AttributeConverter<SealedString, String> {
+
+    @Override
+    public String convertToDatabaseColumn(SealedString attribute) {
+        return attribute == null ? null : attribute.ciphertext();
+    }
+
+    @Override
+    public SealedString convertToEntityAttribute(String dbData) {
+        return SealedString.fromDatabase(dbData);
+    }
+}
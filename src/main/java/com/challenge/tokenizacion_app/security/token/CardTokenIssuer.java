@@ -0,0 +1,102 @@
+package com.challenge.tokenizacion_app.security.token;
+
+import com.challenge.tokenizacion_app.repository.CardRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Emite tokens de tarjeta con el {@link TokenGenerator} configurado y decide cómo se guardan:
+ * <ul>
+ *   <li>{@code TEXT}: solo la columna {@code cards.token} (VARCHAR, 36 caracteres).</li>
+ *   <li>{@code BINARY}: solo los 16 bytes del token en {@code cards.token_key} ({@code cards.token}
+ *       queda NULL); el texto se deriva de la clave ({@link #tokenOf}). Las búsquedas del checkout
+ *       van por ese único índice de 16 bytes.</li>
+ * </ul>
+ * BINARY requiere tokens UUID (format=UUID o un generador propio con esa forma). Las filas de texto
+ * anteriores se pasan a binario al arrancar ({@link CardTokenKeyBackfill}); hasta entonces un miss
+ * por clave se reintenta por texto.
+ */
+@Component
+public class CardTokenIssuer {
+
+    public enum Storage { TEXT, BINARY }
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final TokenGenerator generator;
+    private final CardRepository cardRepository;
+    private final Storage storage;
+    private volatile boolean legacyTextRows;
+
+    public CardTokenIssuer(TokenGenerator generator,
+                           CardRepository cardRepository,
+                           @Value("${tokenization.token.storage:TEXT}") Storage storage) {
+        if (storage == Storage.BINARY && generator.mayCollide()) {
+            throw new IllegalStateException("tokenization.token.storage=BINARY requiere tokens UUID (format=UUID)");
+        }
+        this.generator = generator;
+        this.cardRepository = cardRepository;
+        this.storage = storage;
+        this.legacyTextRows = storage == Storage.BINARY;
+    }
+
+    /** Token nuevo; solo consulta la DB si el formato puede colisionar. */
+    public String issue(String pan) {
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            String token = generator.generate(pan);
+            if (storage == Storage.BINARY && !token.equals(tokenOf(keyOf(token)))) {
+                throw new IllegalStateException("El generador de tokens no produce UUID; no se puede guardar en binario");
+            }
+            if (!generator.mayCollide() || !cardRepository.existsByToken(token)) {
+                return token;
+            }
+        }
+        throw new IllegalStateException("No se pudo generar un token único");
+    }
+
+    /** Valor para {@code cards.token_key}: 16 bytes en BINARY, null en TEXT (o si no es un UUID). */
+    public byte[] keyFor(String token) {
+        return storage == Storage.BINARY ? keyOf(token) : null;
+    }
+
+    /** Valor para {@code cards.token}: el token en TEXT, null en BINARY (se guarda solo la clave). */
+    public String textFor(String token) {
+        return keyFor(token) != null ? null : token;
+    }
+
+    public Storage storage() {
+        return storage;
+    }
+
+    /** BINARY: puede haber filas de texto sin clave todavía, así que un miss por clave se busca por texto. */
+    public boolean hasLegacyTextRows() {
+        return legacyTextRows;
+    }
+
+    void legacyTextRowsMigrated() {
+        legacyTextRows = false;
+    }
+
+    /** Texto del token a partir de {@code cards.token_key} (UUID en minúsculas); null si no son 16 bytes. */
+    public static String tokenOf(byte[] key) {
+        if (key == null || key.length != 16) return null;
+        ByteBuffer buf = ByteBuffer.wrap(key);
+        return new UUID(buf.getLong(), buf.getLong()).toString();
+    }
+
+    static byte[] keyOf(String token) {
+        if (token == null || token.length() != 36) return null;
+        try {
+            UUID uuid = UUID.fromString(token);
+            return ByteBuffer.allocate(16)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .array();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
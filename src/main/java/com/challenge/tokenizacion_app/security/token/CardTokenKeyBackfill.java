@@ -0,0 +1,41 @@
+package com.challenge.tokenizacion_app.security.token;
+
+import com.challenge.tokenizacion_app.repository.CardBatchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Con {@code tokenization.token.storage=BINARY}, al arrancar pasa las tarjetas guardadas como texto
+ * a su clave de 16 bytes y vacía {@code cards.token}. Solo los tokens UUID canónicos (en minúsculas):
+ * el texto derivado de la clave debe ser idéntico, porque es el AAD del registro cifrado. Al terminar,
+ * {@link com.challenge.tokenizacion_app.cache.CardTokenCache} deja de reintentar por texto.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CardTokenKeyBackfill implements ApplicationRunner {
+
+    private final CardTokenIssuer tokenIssuer;
+    private final CardBatchRepository cardBatchRepository;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!tokenIssuer.hasLegacyTextRows()) return;
+        try {
+            int moved = cardBatchRepository.moveTokensToKeys(CardTokenKeyBackfill::canonicalKey);
+            tokenIssuer.legacyTextRowsMigrated();
+            if (moved > 0) log.info("Tokens de tarjeta pasados a token_key (storage=BINARY): {}", moved);
+        } catch (RuntimeException e) {
+            // Se reintenta en el próximo arranque; mientras tanto los miss se siguen buscando por texto
+            log.warn("No se pudieron pasar los tokens a token_key: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] canonicalKey(String token) {
+        byte[] key = CardTokenIssuer.keyOf(token);
+        return key != null && token.equals(CardTokenIssuer.tokenOf(key)) ? key : null;
+    }
+}
@@ -0,0 +1,57 @@
+package com.challenge.tokenizacion_app.security.token;
+
+import java.security.SecureRandom;
+
+/**
+ * Token numérico con la misma longitud y los mismos últimos 4 dígitos del PAN; el resto es
+ * aleatorio (DRBG del hilo). Sirve a sistemas que validan largo/dígitos o muestran "**** 1234".
+ * <p>
+ * El token nunca pasa la verificación de Luhn, así que no puede confundirse con un PAN real.
+ * Con PAN cortos el espacio es chico: {@link #mayCollide()} pide al emisor verificar unicidad.
+ */
+public class FormatPreservingTokenGenerator implements TokenGenerator {
+
+    private static final int KEEP = 4;
+
+    @Override
+    public String generate(String pan) {
+        int len = pan.length();
+        if (len <= KEEP + 1) {
+            throw new IllegalArgumentException("Número de tarjeta demasiado corto para token con formato");
+        }
+        SecureRandom rnd = ThreadLocalDrbg.current();
+        char[] out = new char[len];
+        for (int i = 0; i < len - KEEP; i++) {
+            out[i] = (char) ('0' + rnd.nextInt(10));
+        }
+        pan.getChars(len - KEEP, len, out, len - KEEP);
+
+        if (luhnValid(out)) {
+            // Cambiar un solo dígito siempre rompe Luhn (detecta todo error de un dígito)
+            int i = rnd.nextInt(len - KEEP);
+            out[i] = (char) ('0' + (out[i] - '0' + 1) % 10);
+        }
+        String token = new String(out);
+        return token.equals(pan) ? generate(pan) : token;
+    }
+
+    @Override
+    public boolean mayCollide() {
+        return true;
+    }
+
+    static boolean luhnValid(char[] digits) {
+        int sum = 0;
+        boolean dbl = false;
+        for (int i = digits.length - 1; i >= 0; i--) {
+            int d = digits[i] - '0';
+            if (dbl) {
+                d *= 2;
+                if (d > 9) d -= 9;
+            }
+            sum += d;
+            dbl = !dbl;
+        }
+        return sum % 10 == 0;
+    }
+}
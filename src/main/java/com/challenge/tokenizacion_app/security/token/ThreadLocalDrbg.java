@@ -0,0 +1,40 @@
+package com.challenge.tokenizacion_app.security.token;
+
+import java.nio.ByteBuffer;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import static java.security.DrbgParameters.Capability.RESEED_ONLY;
+
+/**
+ * Un DRBG (NIST SP 800-90A, 256 bits) por hilo.
+ * <p>
+ * {@code UUID.randomUUID()} comparte un único SecureRandom en todo el proceso y sus llamadas se
+ * serializan; aquí cada hilo tiene su instancia, sembrada una vez desde la fuente de entropía
+ * del sistema y personalizada con el id del hilo, así que generar no compite con nadie.
+ */
+final class ThreadLocalDrbg {
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(ThreadLocalDrbg::create);
+
+    private ThreadLocalDrbg() {
+    }
+
+    static SecureRandom current() {
+        return RANDOM.get();
+    }
+
+    private static SecureRandom create() {
+        byte[] personalization = ByteBuffer.allocate(16)
+                .putLong(Thread.currentThread().getId())
+                .putLong(System.nanoTime())
+                .array();
+        try {
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(256, RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom(); // JVM sin DRBG: igual es una instancia por hilo
+        }
+    }
+}
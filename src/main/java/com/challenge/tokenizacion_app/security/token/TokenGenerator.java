@@ -0,0 +1,19 @@
+package com.challenge.tokenizacion_app.security.token;
+
+/**
+ * Genera el token que reemplaza a la tarjeta. Pluggable: basta con declarar otro bean @Primary
+ * {@code TokenGenerator} para reemplazar los de {@code tokenization.token.format}.
+ */
+public interface TokenGenerator {
+
+    /** @param pan número de tarjeta en claro (solo dígitos, ya validado) */
+    String generate(String pan);
+
+    /**
+     * true si el espacio de tokens es lo bastante chico como para que el emisor deba
+     * verificar unicidad antes de usar el token (p.ej. formato que preserva el PAN).
+     */
+    default boolean mayCollide() {
+        return false;
+    }
+}
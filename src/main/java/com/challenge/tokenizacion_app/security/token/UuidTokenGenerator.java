@@ -0,0 +1,21 @@
+package com.challenge.tokenizacion_app.security.token;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Token aleatorio con forma de UUID v4 (36 caracteres, el mismo formato que ya se guardaba),
+ * generado con el DRBG del hilo. Sus 16 bytes son los que se guardan en {@code cards.token_key}.
+ */
+public class UuidTokenGenerator implements TokenGenerator {
+
+    @Override
+    public String generate(String pan) {
+        SecureRandom rnd = ThreadLocalDrbg.current();
+        long msb = rnd.nextLong();
+        long lsb = rnd.nextLong();
+        msb = (msb & ~0xF000L) | 0x4000L;                       // versión 4
+        lsb = (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // variante IETF
+        return new UUID(msb, lsb).toString();
+    }
+}
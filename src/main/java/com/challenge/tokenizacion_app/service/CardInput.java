@@ -0,0 +1,132 @@
+package com.challenge.tokenizacion_app.service;
+
+import com.challenge.tokenizacion_app.dto.CardDTO;
+
+/**
+ * Datos de tarjeta ya validados y normalizados; lo mismo que se valida es lo que se persiste.
+ * <p>
+ * {@link #parse} recorre cada campo una sola vez sobre los chars de entrada, sin regex, split,
+ * {@code String.format} ni {@code YearMonth.parse}:
+ * - número: 12-19 dígitos ASCII con checksum de Luhn válido;
+ * - CVV: 3 o 4 dígitos;
+ * - expiración: "YYYY-MM" o "MM/YY" (2000-2099), normalizada a "YYYY-MM".
+ * Los espacios alrededor se ignoran (como {@code trim}). Solo se crea un String nuevo si hubo que
+ * recortar o convertir "MM/YY"; los errores son {@link IllegalArgumentException} (400).
+ */
+public record CardInput(String number, String cvv, String expiryDate) {
+
+    private static final String INVALID_NUMBER = "Número de tarjeta inválido";
+    private static final String INVALID_CVV = "CVV inválido";
+    private static final String INVALID_EXPIRY = "Fecha de expiración inválida";
+
+    public static CardInput parse(CardDTO dto) {
+        if (dto == null) throw new IllegalArgumentException("Datos de tarjeta requeridos");
+        return parse(dto.getNumber(), dto.getCvv(), dto.getExpiryDate());
+    }
+
+    public static CardInput parse(String number, String cvv, String expiryDate) {
+        return new CardInput(parseNumber(number), parseCvv(cvv), parseExpiry(expiryDate));
+    }
+
+    /** Últimos 4 dígitos, para el enmascarado. */
+    public String last4() {
+        return number.substring(number.length() - 4);
+    }
+
+    @Override
+    public String toString() {
+        return "CardInput[number=****, cvv=****, expiryDate=****]"; // nunca loggear datos de tarjeta
+    }
+
+    /* ----------------- Campos ----------------- */
+
+    static String parseNumber(String raw) {
+        if (raw == null) throw new IllegalArgumentException(INVALID_NUMBER);
+        int from = start(raw);
+        int to = end(raw, from);
+        int len = to - from;
+        if (len < 12 || len > 19) throw new IllegalArgumentException(INVALID_NUMBER);
+
+        // Dígitos y Luhn en la misma pasada, desde el dígito verificador hacia la izquierda
+        int sum = 0;
+        boolean dbl = false;
+        for (int i = to - 1; i >= from; i--) {
+            int d = raw.charAt(i) - '0';
+            if (d < 0 || d > 9) throw new IllegalArgumentException(INVALID_NUMBER);
+            if (dbl) {
+                d <<= 1;
+                if (d > 9) d -= 9;
+            }
+            sum += d;
+            dbl = !dbl;
+        }
+        if (sum % 10 != 0) throw new IllegalArgumentException(INVALID_NUMBER);
+        return slice(raw, from, to);
+    }
+
+    static String parseCvv(String raw) {
+        if (raw == null) throw new IllegalArgumentException(INVALID_CVV);
+        int from = start(raw);
+        int to = end(raw, from);
+        int len = to - from;
+        if ((len != 3 && len != 4) || digits(raw, from, len) < 0) {
+            throw new IllegalArgumentException(INVALID_CVV);
+        }
+        return slice(raw, from, to);
+    }
+
+    static String parseExpiry(String raw) {
+        if (raw == null) throw new IllegalArgumentException(INVALID_EXPIRY);
+        int from = start(raw);
+        int to = end(raw, from);
+        int len = to - from;
+
+        // "YYYY-MM": ya normalizada
+        if (len == 7 && raw.charAt(from + 4) == '-') {
+            int month = digits(raw, from + 5, 2);
+            if (digits(raw, from, 4) < 0 || month < 1 || month > 12) {
+                throw new IllegalArgumentException(INVALID_EXPIRY);
+            }
+            return slice(raw, from, to);
+        }
+        // "MM/YY" -> "20YY-MM"
+        if (len == 5 && raw.charAt(from + 2) == '/') {
+            int month = digits(raw, from, 2);
+            if (digits(raw, from + 3, 2) < 0 || month < 1 || month > 12) {
+                throw new IllegalArgumentException(INVALID_EXPIRY);
+            }
+            return new String(new char[]{
+                    '2', '0', raw.charAt(from + 3), raw.charAt(from + 4), '-', raw.charAt(from), raw.charAt(from + 1)
+            });
+        }
+        throw new IllegalArgumentException(INVALID_EXPIRY);
+    }
+
+    /** Valor de {@code n} dígitos ASCII desde {@code from}, o -1 si alguno no lo es. */
+    private static int digits(String s, int from, int n) {
+        int value = 0;
+        for (int i = from; i < from + n; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9) return -1;
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    // Mismo criterio que String.trim(): se ignoran chars <= ' ' en los extremos
+    private static int start(String s) {
+        int i = 0;
+        while (i < s.length() && s.charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private static int end(String s, int from) {
+        int i = s.length();
+        while (i > from && s.charAt(i - 1) <= ' ') i--;
+        return i;
+    }
+
+    private static String slice(String s, int from, int to) {
+        return from == 0 && to == s.length() ? s : s.substring(from, to);
+    }
+}
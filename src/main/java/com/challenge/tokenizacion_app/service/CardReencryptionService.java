@@ -0,0 +1,78 @@
+package com.challenge.tokenizacion_app.service;
+
+import com.challenge.tokenizacion_app.dto.ReencryptionStatusDTO;
+import com.challenge.tokenizacion_app.security.crypto.AesGcmKeyRing;
+import org.springframework.batch.core.*;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Lanza y consulta el job de re-cifrado de tarjetas.
+ * Los parámetros identifican la clave destino: relanzar tras un fallo reinicia
+ * la misma instancia desde el último chunk confirmado de cada partición.
+ */
+@Service
+public class CardReencryptionService {
+
+    private final Job job;
+    private final JobExplorer jobExplorer;
+    private final TaskExecutorJobLauncher launcher;
+
+    public CardReencryptionService(@Qualifier("cardReencryptionJob") Job job,
+                                   JobRepository jobRepository,
+                                   JobExplorer jobExplorer) throws Exception {
+        this.job = job;
+        this.jobExplorer = jobExplorer;
+        // Launcher propio asíncrono: el request HTTP no espera a que termine el job
+        this.launcher = new TaskExecutorJobLauncher();
+        this.launcher.setJobRepository(jobRepository);
+        this.launcher.setTaskExecutor(new SimpleAsyncTaskExecutor("reencrypt-job-"));
+        this.launcher.afterPropertiesSet();
+    }
+
+    public ReencryptionStatusDTO start() throws JobExecutionAlreadyRunningException, JobRestartException,
+            JobInstanceAlreadyCompleteException, JobParametersInvalidException {
+        String targetPrefix = AesGcmKeyRing.instance().currentPrefix();
+        JobParameters params = new JobParametersBuilder()
+                .addString("targetPrefix", targetPrefix)
+                .toJobParameters();
+        return toDTO(launcher.run(job, params));
+    }
+
+    public ReencryptionStatusDTO status(Long executionId) {
+        JobExecution exec = jobExplorer.getJobExecution(executionId);
+        if (exec == null) {
+            throw new NoSuchElementException("Ejecución no encontrada: " + executionId);
+        }
+        return toDTO(exec);
+    }
+
+    private ReencryptionStatusDTO toDTO(JobExecution exec) {
+        long read = 0, written = 0;
+        for (StepExecution se : exec.getStepExecutions()) {
+            // El step manager agrega los conteos de las particiones; contamos solo workers
+            if (se.getStepName().startsWith("cardReencryptionWorkerStep")) {
+                read += se.getReadCount();
+                written += se.getWriteCount();
+            }
+        }
+        return ReencryptionStatusDTO.builder()
+                .executionId(exec.getId())
+                .status(exec.getStatus().name())
+                .targetPrefix(exec.getJobParameters().getString("targetPrefix"))
+                .read(read)
+                .written(written)
+                .startTime(exec.getStartTime())
+                .endTime(exec.getEndTime())
+                .build();
+    }
+}
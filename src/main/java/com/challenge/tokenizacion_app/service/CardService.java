@@ -1,28 +1,55 @@
 package com.challenge.tokenizacion_app.service;
 
+import com.challenge.tokenizacion_app.cache.CardFingerprintFilter;
+import com.challenge.tokenizacion_app.cache.CardTokenCache;
+import com.challenge.tokenizacion_app.dto.BatchTokenizeResultDTO;
 import com.challenge.tokenizacion_app.dto.CardDTO;
+import com.challenge.tokenizacion_app.dto.CursorPageDTO;
+import com.challenge.tokenizacion_app.dto.TokenizeCardRequest;
 import com.challenge.tokenizacion_app.model.entity.Card;
+import com.challenge.tokenizacion_app.model.entity.LogEvent;
 import com.challenge.tokenizacion_app.model.entity.User;
+import com.challenge.tokenizacion_app.repository.CardBatchRepository;
 import com.challenge.tokenizacion_app.repository.CardRepository;
 import com.challenge.tokenizacion_app.repository.UserRepository;
+import com.challenge.tokenizacion_app.repository.projection.CardSummary;
+import com.challenge.tokenizacion_app.security.crypto.CardSecrets;
+import com.challenge.tokenizacion_app.security.crypto.PanFingerprinter;
+import com.challenge.tokenizacion_app.security.crypto.SealedCardRecord;
+import com.challenge.tokenizacion_app.security.token.CardTokenIssuer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.YearMonth;
-import java.time.format.DateTimeParseException;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @RequiredArgsConstructor
 public class CardService {
 
+    /** Reintentos del INSERT del lote cuando otra petición tokeniza la misma tarjeta en paralelo. */
+    private static final int BATCH_INSERT_ATTEMPTS = 3;
+
     private final CardRepository cardRepository;
+    private final CardBatchRepository cardBatchRepository;
     private final UserRepository userRepository;
     private final LogEventService logEventService;
+    private final CardTokenCache cardTokenCache;
+    private final CardTokenIssuer tokenIssuer;
+    private final PanFingerprinter panFingerprinter;
+    private final CardFingerprintFilter fingerprintFilter;
+    private final TransactionTemplate tx;
+
+    @Value("${api.pagination.max-page-size:200}")
+    private int maxPageSize;
+
+    @Value("${tokenization.batch.max-items:10000}")
+    private int batchMaxItems;
 
     /**
      * Probabilidad de rechazo configurable (0..1).
@@ -37,13 +64,25 @@ public class CardService {
         this.rejectionProbability = Math.max(0.0, Math.min(1.0, p));
     }
 
-    @Transactional
+    /**
+     * Tokeniza una tarjeta. Si el usuario ya la había tokenizado devuelve el mismo token sin
+     * insertar, antes de la probabilidad de rechazo (igual que el lote). El índice único
+     * (user_id, pan_fingerprint) cierra la carrera entre dos peticiones simultáneas: la que pierde
+     * el INSERT relee la tarjeta de la ganadora y devuelve su token.
+     */
     public CardDTO tokenizeCard(Long userId, CardDTO cardDTO) {
         // 1) Validaciones básicas (no exponemos datos sensibles en logs)
         if (userId == null) {
             throw new IllegalArgumentException("userId es requerido");
         }
-        validateCardInput(cardDTO);
+        CardInput input = CardInput.parse(cardDTO); // validado y normalizado en una pasada
+
+        // 1b) Misma tarjeta ya tokenizada para este usuario: se devuelve su token, sin insertar
+        byte[] fingerprint = panFingerprinter.fingerprint(input.number());
+        Optional<CardSummary> existing = findExisting(userId, fingerprint);
+        if (existing.isPresent()) {
+            return reused(userId, existing.get());
+        }
 
         // 2) Probabilidad de rechazo (configurable)
         if (ThreadLocalRandom.current().nextDouble() < rejectionProbability) {
@@ -55,28 +94,52 @@ public class CardService {
             throw new RuntimeException("Tokenización rechazada por probabilidad configurada");
         }
 
+        Card card;
+        try {
+            card = tx.execute(s -> insertCard(userId, input, fingerprint));
+        } catch (DataIntegrityViolationException e) {
+            // Otra petición tokenizó la misma tarjeta entre la búsqueda y el INSERT
+            CardSummary winner = cardRepository.findByFingerprint(userId, fingerprint, Limit.of(1)).stream()
+                    .findFirst()
+                    .orElseThrow(() -> e);
+            fingerprintFilter.add(userId, fingerprint);
+            return reused(userId, winner);
+        }
+        fingerprintFilter.add(userId, fingerprint);
+        cardTokenCache.put(card.getToken(), card.getId(), userId); // precarga para el checkout
+
+        // 8) Respuesta (nunca regreses datos sensibles)
+        return CardDTO.builder()
+                .id(card.getId())
+                .token(card.getToken())
+                .maskedNumber(card.getMaskedNumber())
+                .build();
+    }
+
+    /** Pasos 3-7 en una transacción: si el INSERT viola el índice único no queda nada (ni el log). */
+    private Card insertCard(Long userId, CardInput input, byte[] fingerprint) {
         // 3) Usuario
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
 
-        // 4) Token único
-        String token = UUID.randomUUID().toString();
+        // 4) Token único (generador configurable, DRBG por hilo)
+        String token = tokenIssuer.issue(input.number());
 
         // 5) Enmascarado (solo guardamos el enmascarado, nunca el número en claro)
-        String maskedNumber = maskCardNumber(cardDTO.getNumber());
+        String maskedNumber = maskCardNumber(input);
 
         // 6) Persistencia
-        //    IMPORTANTE: gracias al @Converter AES-GCM en la entidad,
-        //    cvv y expiryDate se cifran/descifran automáticamente.
+        //    IMPORTANTE: cvv y expiryDate se sellan juntos en un registro AES-GCM ligado
+        //    al token; al leerse quedan sellados hasta que alguien llame revealSecrets().
         Card card = Card.builder()
-                .token(token)
+                .token(tokenIssuer.textFor(token)) // null con storage=BINARY
+                .tokenKey(tokenIssuer.keyFor(token))
                 .maskedNumber(maskedNumber)
-                .cvv(cardDTO.getCvv())                 // <- cifrado por JPA Converter
-                .expiryDate(normalizeExpiry(cardDTO))  // <- cifrado por JPA Converter
+                .panFingerprint(fingerprint)
+                .secrets(SealedCardRecord.seal(new CardSecrets(input.cvv(), input.expiryDate()), token))
                 .user(user)
                 .build();
-
-        cardRepository.save(card);
+        cardRepository.save(card); // IDENTITY: el INSERT (y la violación del índice) ocurre aquí
 
         // 7) Log transaccional (sin datos sensibles)
         logEventService.log(
@@ -84,118 +147,205 @@ public class CardService {
                 "Token creado exitosamente para user " + userId,
                 userId
         );
+        return card;
+    }
 
-        // 8) Respuesta (nunca regreses datos sensibles)
+    private CardDTO reused(Long userId, CardSummary card) {
+        logEventService.log(
+                "CARD_TOKEN_REUSED",
+                "Tarjeta ya tokenizada para user " + userId,
+                userId
+        );
         return CardDTO.builder()
-                .id(card.getId())
-                .token(card.getToken())
-                .maskedNumber(card.getMaskedNumber())
+                .id(card.id())
+                .token(card.token())
+                .maskedNumber(card.maskedNumber())
                 .build();
     }
 
-    public List<CardDTO> getCardsByUser(Long userId) {
-        return cardRepository.findByUserId(userId).stream()
-                .map(card -> CardDTO.builder()
-                        .id(card.getId())
-                        .token(card.getToken())
-                        .maskedNumber(card.getMaskedNumber())
-                        .build())
-                .toList();
-    }
-
-    // -------------------- Helpers --------------------
-
-    private void validateCardInput(CardDTO dto) {
-        if (dto == null) throw new IllegalArgumentException("Datos de tarjeta requeridos");
-
-        // Número (mín 12-13, máx 19) – aquí solo validación básica de longitud y dígitos
-        String number = safe(dto.getNumber());
-        if (number.length() < 12 || number.length() > 19 || !number.chars().allMatch(Character::isDigit)) {
-            throw new IllegalArgumentException("Número de tarjeta inválido");
+    /**
+     * Tokenización masiva: valida cada ítem, resuelve cada userId una sola vez y
+     * escribe tarjetas y auditoría en lotes JDBC dentro de una única transacción.
+     * Los ítems inválidos no abortan el lote: se devuelven como REJECTED con su motivo.
+     * Como en {@link #tokenizeCard}, una tarjeta ya tokenizada (en la DB o antes en el lote)
+     * devuelve su token antes de la probabilidad de rechazo; si otra petición la inserta en
+     * paralelo, el índice único hace fallar el lote, que se reintenta sin esas tarjetas.
+     */
+    public List<BatchTokenizeResultDTO> tokenizeBatch(List<TokenizeCardRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("Debe enviar al menos una tarjeta");
         }
-
-        // CVV (3 o 4 dígitos)
-        String cvv = safe(dto.getCvv());
-        if (!(cvv.length() == 3 || cvv.length() == 4) || !cvv.chars().allMatch(Character::isDigit)) {
-            throw new IllegalArgumentException("CVV inválido");
+        if (requests.size() > batchMaxItems) {
+            throw new IllegalArgumentException("El lote excede el máximo de " + batchMaxItems + " tarjetas");
         }
 
-        // Expiración aceptando "MM/YY" o "YYYY-MM"
-        // Normalizamos luego a "YYYY-MM"
-        String expiry = safe(dto.getExpiryDate());
-        if (!isValidExpiry(expiry)) {
-            throw new IllegalArgumentException("Fecha de expiración inválida");
+        // 1) Usuarios: un solo SELECT ... IN por userId distinto
+        Set<Long> userIds = new HashSet<>();
+        for (TokenizeCardRequest r : requests) {
+            if (r != null && r.getUserId() != null) userIds.add(r.getUserId());
+        }
+        Map<Long, User> usersById = new HashMap<>();
+        for (User u : userRepository.findAllById(userIds)) {
+            usersById.put(u.getId(), u);
         }
-    }
 
-    private String maskCardNumber(String number) {
-        String n = safe(number);
-        if (n.length() < 4) return "****";
-        return "**** **** **** " + n.substring(n.length() - 4);
-    }
+        List<BatchTokenizeResultDTO> results = new ArrayList<>(requests.size());
+        List<Card> cards = new ArrayList<>(requests.size());
+        Map<Card, LogEvent> cardEvents = new HashMap<>(requests.size() * 2);
+        Map<Card, List<Integer>> resultsOf = new HashMap<>(requests.size() * 2); // posiciones con su token
+        List<LogEvent> events = new ArrayList<>(); // rechazos
+        Set<String> minted = new HashSet<>(requests.size() * 2);
+        Map<String, Card> byFingerprint = new HashMap<>(requests.size() * 2); // repetidas dentro del lote
 
-    /**
-     * Normaliza la expiración a "YYYY-MM" para almacenarla (y luego cifrarla).
-     * Acepta entrada "MM/YY" (p.ej. 09/28) o "YYYY-MM" (p.ej. 2028-09).
-     */
-    private String normalizeExpiry(CardDTO dto) {
-        String raw = safe(dto.getExpiryDate());
-        // "YYYY-MM" directo válido
-        if (raw.matches("^\\d{4}-\\d{2}$")) {
-            // Validamos que sea un YearMonth real
+        for (int i = 0; i < requests.size(); i++) {
+            TokenizeCardRequest r = requests.get(i);
+            Long userId = r != null ? r.getUserId() : null;
             try {
-                YearMonth.parse(raw);
-                return raw;
-            } catch (DateTimeParseException ignored) {
-                throw new IllegalArgumentException("Fecha de expiración inválida");
+                if (r == null) throw new IllegalArgumentException("Datos de tarjeta requeridos");
+                if (userId == null) throw new IllegalArgumentException("userId es requerido");
+
+                CardInput input = CardInput.parse(r.getNumber(), r.getCvv(), r.getExpiryDate());
+
+                User user = usersById.get(userId);
+                if (user == null) throw new IllegalArgumentException("Usuario no encontrado");
+
+                // Ya tokenizada (en la DB o antes en este lote): se devuelve el token existente
+                byte[] fingerprint = panFingerprinter.fingerprint(input.number());
+                String fingerprintKey = userId + ":" + Base64.getEncoder().encodeToString(fingerprint);
+                Card sameInBatch = byFingerprint.get(fingerprintKey);
+                Optional<CardSummary> existing = sameInBatch == null ? findExisting(userId, fingerprint) : Optional.empty();
+                if (sameInBatch != null || existing.isPresent()) {
+                    if (sameInBatch != null) resultsOf.get(sameInBatch).add(results.size());
+                    results.add(BatchTokenizeResultDTO.builder()
+                            .index(i)
+                            .userId(userId)
+                            .status(BatchTokenizeResultDTO.TOKENIZED)
+                            .token(sameInBatch != null ? sameInBatch.getToken() : existing.get().token())
+                            .maskedNumber(sameInBatch != null ? sameInBatch.getMaskedNumber() : existing.get().maskedNumber())
+                            .build());
+                    continue;
+                }
+
+                if (ThreadLocalRandom.current().nextDouble() < rejectionProbability) {
+                    events.add(logEventService.newEvent(
+                            "CARD_TOKENIZATION_REJECTED",
+                            "Tokenización rechazada para user " + userId,
+                            userId));
+                    throw new IllegalArgumentException("Tokenización rechazada por probabilidad configurada");
+                }
+
+                String token;
+                do {
+                    token = tokenIssuer.issue(input.number());
+                } while (!minted.add(token)); // único también dentro del lote
+                Card card = Card.builder()
+                        .token(tokenIssuer.textFor(token)) // null con storage=BINARY
+                        .tokenKey(tokenIssuer.keyFor(token))
+                        .maskedNumber(maskCardNumber(input))
+                        .panFingerprint(fingerprint)
+                        .secrets(SealedCardRecord.seal(new CardSecrets(input.cvv(), input.expiryDate()), token))
+                        .user(user)
+                        .build();
+                cards.add(card);
+                byFingerprint.put(fingerprintKey, card);
+                cardEvents.put(card, logEventService.newEvent(
+                        "CARD_TOKENIZED",
+                        "Token creado exitosamente para user " + userId,
+                        userId));
+
+                resultsOf.computeIfAbsent(card, c -> new ArrayList<>()).add(results.size());
+                results.add(BatchTokenizeResultDTO.builder()
+                        .index(i)
+                        .userId(userId)
+                        .status(BatchTokenizeResultDTO.TOKENIZED)
+                        .token(card.getToken())
+                        .maskedNumber(card.getMaskedNumber())
+                        .build());
+            } catch (IllegalArgumentException e) {
+                results.add(BatchTokenizeResultDTO.builder()
+                        .index(i)
+                        .userId(userId)
+                        .status(BatchTokenizeResultDTO.REJECTED)
+                        .reason(e.getMessage())
+                        .build());
             }
         }
-        // "MM/YY" -> "YYYY-MM"
-        if (raw.matches("^\\d{2}/\\d{2}$")) {
-            String[] parts = raw.split("/");
-            int mm = Integer.parseInt(parts[0]);
-            int yy = Integer.parseInt(parts[1]); // 00..99
-            if (mm < 1 || mm > 12) throw new IllegalArgumentException("Mes de expiración inválido");
-            // Convención: 2000-2099 para YY
-            int yyyy = 2000 + yy;
-            String normalized = String.format("%04d-%02d", yyyy, mm);
+
+        // 2) Persistencia en lotes (registros ya sellados arriba), en una transacción
+        for (int attempt = 1; ; attempt++) {
+            List<Card> toInsert = cards;
+            List<LogEvent> toLog = new ArrayList<>(events);
+            for (Card card : toInsert) toLog.add(cardEvents.get(card));
             try {
-                YearMonth.parse(normalized);
-                return normalized;
-            } catch (DateTimeParseException ignored) {
-                throw new IllegalArgumentException("Fecha de expiración inválida");
+                tx.executeWithoutResult(s -> {
+                    cardBatchRepository.insertAll(toInsert);
+                    logEventService.logAll(toLog);
+                });
+                break;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt >= BATCH_INSERT_ATTEMPTS) throw e;
+                cards = dropConcurrentDuplicates(cards, results, resultsOf);
+                if (cards.size() == toInsert.size()) throw e; // la violación no fue por huella repetida
             }
         }
-        throw new IllegalArgumentException("Formato de expiración no soportado (use MM/YY o YYYY-MM)");
+        for (Card card : cards) fingerprintFilter.add(card.getUser().getId(), card.getPanFingerprint());
+
+        return results;
     }
 
-    private boolean isValidExpiry(String raw) {
-        if (raw == null) return false;
-        if (raw.matches("^\\d{4}-\\d{2}$")) {
-            try {
-                YearMonth.parse(raw);
-                return true;
-            } catch (DateTimeParseException ignored) {
-                return false;
+    /**
+     * Tras un INSERT fallido por el índice único: las tarjetas que otra petición insertó en paralelo
+     * pasan a devolver el token de esa fila; devuelve las que aún hay que insertar.
+     */
+    private List<Card> dropConcurrentDuplicates(List<Card> cards, List<BatchTokenizeResultDTO> results,
+                                                Map<Card, List<Integer>> resultsOf) {
+        List<Card> remaining = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            Long userId = card.getUser().getId();
+            Optional<CardSummary> winner = cardRepository
+                    .findByFingerprint(userId, card.getPanFingerprint(), Limit.of(1)).stream().findFirst();
+            if (winner.isEmpty()) {
+                remaining.add(card);
+                continue;
             }
-        }
-        if (raw.matches("^\\d{2}/\\d{2}$")) {
-            String[] p = raw.split("/");
-            try {
-                int mm = Integer.parseInt(p[0]);
-                int yy = Integer.parseInt(p[1]);
-                if (mm < 1 || mm > 12) return false;
-                int yyyy = 2000 + yy;
-                YearMonth.parse(String.format("%04d-%02d", yyyy, mm));
-                return true;
-            } catch (Exception ignored) {
-                return false;
+            for (int pos : resultsOf.get(card)) {
+                BatchTokenizeResultDTO result = results.get(pos);
+                result.setToken(winner.get().token());
+                result.setMaskedNumber(winner.get().maskedNumber());
             }
         }
-        return false;
+        return remaining;
+    }
+
+    /** Página keyset de las tarjetas del usuario; solo id/token/enmascarado (nada que descifrar). */
+    @Transactional(readOnly = true, timeoutString = "${api.pagination.query-timeout:2}")
+    public CursorPageDTO<CardDTO> getCardsByUser(Long userId, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        List<CardSummary> rows = cardRepository.findPageByUserId(userId, Cursors.decodeId(cursor), Limit.of(size + 1));
+        boolean hasMore = rows.size() > size;
+        List<CardDTO> items = (hasMore ? rows.subList(0, size) : rows).stream()
+                .map(card -> CardDTO.builder()
+                        .id(card.id())
+                        .token(card.token())
+                        .maskedNumber(card.maskedNumber())
+                        .build())
+                .toList();
+        return CursorPageDTO.<CardDTO>builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? Cursors.encode(String.valueOf(items.get(size - 1).getId())) : null)
+                .build();
+    }
+
+    // -------------------- Helpers --------------------
+
+    /** El filtro descarta sin consulta las tarjetas nuevas; si "podría existir", una búsqueda por índice. */
+    private Optional<CardSummary> findExisting(Long userId, byte[] fingerprint) {
+        if (!fingerprintFilter.mightContain(userId, fingerprint)) return Optional.empty();
+        return cardRepository.findByFingerprint(userId, fingerprint, Limit.of(1)).stream().findFirst();
     }
 
-    private String safe(String s) {
-        return s == null ? "" : s.trim();
+    private String maskCardNumber(CardInput input) {
+        return "**** **** **** " + input.last4();
     }
 }
@@ -0,0 +1,39 @@
+package com.challenge.tokenizacion_app.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Codificación de los cursores keyset: Base64 URL del último valor de la clave de orden.
+ * Son opacos para el cliente; uno alterado responde 400.
+ */
+final class Cursors {
+
+    private Cursors() {
+    }
+
+    static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return el valor crudo, o null si no se envió cursor (primera página) */
+    static String decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+
+    /** Cursor de un id numérico; 0 para la primera página (los ids IDENTITY empiezan en 1). */
+    static long decodeId(String cursor) {
+        String raw = decode(cursor);
+        if (raw == null) return 0L;
+        try {
+            return Long.parseLong(raw);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor inválido");
+        }
+    }
+}
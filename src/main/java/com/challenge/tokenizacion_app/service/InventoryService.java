@@ -0,0 +1,78 @@
+package com.challenge.tokenizacion_app.service;
+
+import com.challenge.tokenizacion_app.cache.ProductCatalogSnapshot;
+import com.challenge.tokenizacion_app.inventory.InventoryLedger;
+import com.challenge.tokenizacion_app.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Reserva de inventario con UPDATE condicional por línea
+ * ({@code stock = stock - q WHERE id = ? AND stock >= q}) en lugar de leer-modificar-guardar.
+ * <p>
+ * Concurrencia: cada UPDATE toma el lock de fila solo hasta el commit, y no hay conflictos de
+ * versión; mientras quede stock, los checkouts concurrentes del mismo SKU simplemente pasan.
+ * Las líneas se aplican en orden de productId para que dos órdenes multi-línea nunca tomen
+ * los locks en orden inverso (deadlock). Si una línea falla se lanza excepción y la
+ * transacción del llamador revierte todo (todo o nada).
+ * <p>
+ * Los productos configurados como "hot" se enrutan al {@link InventoryLedger} (memoria +
+ * write-behind); el resto va por la DB.
+ * <p>
+ * Tras el commit se marca el snapshot del catálogo para reconstrucción ({@link ProductCatalogSnapshot}).
+ */
+@Service
+@RequiredArgsConstructor
+public class InventoryService {
+
+    private final ProductRepository productRepository;
+    private final InventoryLedger ledger;
+    private final ProductCatalogSnapshot catalog;
+
+    /**
+     * @param lines       productId -> cantidad (> 0)
+     * @param nameForId   nombre del producto para el mensaje de error
+     */
+    @Transactional
+    public void reserve(Map<Long, Integer> lines, Function<Long, String> nameForId) {
+        SortedMap<Long, Integer> hot = new TreeMap<>();
+        SortedMap<Long, Integer> db = new TreeMap<>();
+        split(lines, hot, db);
+
+        // Primero en memoria (falla rápido, sin locks); si luego falla la DB, el rollback lo restaura
+        ledger.reserve(hot, nameForId);
+        for (Map.Entry<Long, Integer> e : db.entrySet()) {
+            int updated = productRepository.decrementStockIfAvailable(e.getKey(), e.getValue());
+            if (updated == 0) {
+                throw new RuntimeException("Stock insuficiente al confirmar: " + nameForId.apply(e.getKey()));
+            }
+        }
+        catalog.markDirty(); // se aplica al commit
+    }
+
+    /** Compensación: devuelve el stock reservado (mismo orden determinista). */
+    @Transactional
+    public void release(Map<Long, Integer> lines) {
+        SortedMap<Long, Integer> hot = new TreeMap<>();
+        SortedMap<Long, Integer> db = new TreeMap<>();
+        split(lines, hot, db);
+
+        ledger.release(hot);
+        for (Map.Entry<Long, Integer> e : db.entrySet()) {
+            productRepository.incrementStock(e.getKey(), e.getValue());
+        }
+        catalog.markDirty();
+    }
+
+    private void split(Map<Long, Integer> lines, SortedMap<Long, Integer> hot, SortedMap<Long, Integer> db) {
+        for (Map.Entry<Long, Integer> e : lines.entrySet()) {
+            (ledger.isHot(e.getKey()) ? hot : db).put(e.getKey(), e.getValue());
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package com.challenge.tokenizacion_app.service;
 
+import com.challenge.tokenizacion_app.audit.AsyncLogEventWriter;
+import com.challenge.tokenizacion_app.dto.CursorPageDTO;
 import com.challenge.tokenizacion_app.model.entity.LogEvent;
+import com.challenge.tokenizacion_app.model.id.UuidV7;
+import com.challenge.tokenizacion_app.repository.LogEventJdbcRepository;
 import com.challenge.tokenizacion_app.repository.LogEventRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -13,16 +23,92 @@ import java.util.UUID;
 public class LogEventService {
 
     private final LogEventRepository repository;
+    private final LogEventJdbcRepository jdbcRepository;
+    private final AsyncLogEventWriter asyncWriter;
 
+    @Value("${audit.query.max-page-size:500}")
+    private int maxPageSize;
+
+    /**
+     * Registra un evento. Con auditoría asíncrona habilitada el INSERT sale del request:
+     * si hay transacción activa el evento se encola solo tras el commit (mismo resultado
+     * que antes: si la transacción hace rollback, el evento no queda).
+     */
     public void log(String eventType, String message, Long userId) {
-        LogEvent log = LogEvent.builder()
-                .id(UUID.randomUUID().toString())
+        LogEvent event = newEvent(eventType, message, userId);
+        if (!asyncWriter.isEnabled()) {
+            repository.save(event);
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    asyncWriter.submit(event);
+                }
+            });
+        } else {
+            asyncWriter.submit(event);
+        }
+    }
+
+    /** Persiste varios eventos en lotes JDBC (p.ej. tokenización masiva). */
+    public void logAll(List<LogEvent> events) {
+        jdbcRepository.insertAll(events);
+    }
+
+    /**
+     * Consulta paginada por keyset sobre (timestamp, id), más recientes primero.
+     * Se trae una fila extra para saber si hay más páginas sin hacer COUNT.
+     */
+    public CursorPageDTO<LogEvent> search(Long userId, String eventType,
+                                          LocalDateTime from, LocalDateTime to,
+                                          String cursor, int limit) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' debe ser anterior a 'to'");
+        }
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        LocalDateTime afterTs = null;
+        UUID afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                afterTs = LocalDateTime.parse(raw.substring(0, sep));
+                afterId = UUID.fromString(raw.substring(sep + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido");
+            }
+        }
+
+        String type = (eventType == null || eventType.isBlank()) ? null : eventType;
+        List<LogEvent> rows = jdbcRepository.findPage(userId, type, from, to, afterTs, afterId, size + 1);
+        boolean hasMore = rows.size() > size;
+        List<LogEvent> items = hasMore ? rows.subList(0, size) : rows;
+
+        String next = null;
+        if (hasMore) {
+            LogEvent last = items.get(items.size() - 1);
+            next = encodeCursor(last.getTimestamp() + "|" + last.getId());
+        }
+        return CursorPageDTO.<LogEvent>builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(next)
+                .build();
+    }
+
+    private static String encodeCursor(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public LogEvent newEvent(String eventType, String message, Long userId) {
+        return LogEvent.builder()
+                .id(UuidV7.next())
                 .eventType(eventType)
                 .message(message)
                 .userId(userId)
                 .timestamp(LocalDateTime.now())
                 .build();
-        repository.save(log);
     }
 }
-
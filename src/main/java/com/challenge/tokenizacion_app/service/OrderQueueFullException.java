@@ -0,0 +1,9 @@
+package com.challenge.tokenizacion_app.service;
+
+/** La cola de órdenes asíncronas está llena; el cliente debe reintentar más tarde (503). */
+public class OrderQueueFullException extends RuntimeException {
+
+    public OrderQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -1,46 +1,91 @@
 package com.challenge.tokenizacion_app.service;
 
+import com.challenge.tokenizacion_app.cache.CardTokenCache;
 import com.challenge.tokenizacion_app.dto.CartDTO;
 import com.challenge.tokenizacion_app.dto.CartItemDTO;
 import com.challenge.tokenizacion_app.dto.OrderDTO;
 import com.challenge.tokenizacion_app.events.OrderFinalizedEvent;
 import com.challenge.tokenizacion_app.model.entity.*;
+import com.challenge.tokenizacion_app.outbox.OutboxPublisher;
+import com.challenge.tokenizacion_app.payment.PaymentOutcome;
+import com.challenge.tokenizacion_app.payment.PaymentProcessor;
+import com.challenge.tokenizacion_app.payment.PaymentRequest;
 import com.challenge.tokenizacion_app.repository.*;
-import lombok.RequiredArgsConstructor;
+import com.challenge.tokenizacion_app.repository.projection.CardOwnership;
+import com.challenge.tokenizacion_app.repository.projection.OrderPaymentView;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
+/**
+ * Checkout en tres fases para no retener una conexión mientras se cobra:
+ * <ol>
+ *   <li>reserva: transacción corta que reserva stock y persiste la orden PENDING;</li>
+ *   <li>pago: {@link PaymentProcessor} con reintentos y backoff, sin transacción;</li>
+ *   <li>confirmación: transacción corta que marca APPROVED/REJECTED y, si rechaza,
+ *       devuelve el stock (compensación).</li>
+ * </ol>
+ * La orden guarda además el estado del cobro ({@code payment_state}): un cobro aprobado que no
+ * puede quedar registrado sobre la orden se devuelve en la pasarela.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class OrderService {
 
+    /** Intentos para registrar un cobro aprobado antes de devolverlo. */
+    private static final int RECORD_ATTEMPTS = 3;
+    private static final long RECORD_BACKOFF_MS = 100;
+
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
     private final CardRepository cardRepository;
     private final ProductRepository productRepository;
     private final LogEventService logEventService;
     private final CartService cartService;
-    private final ApplicationEventPublisher events;
+    private final CardTokenCache cardTokenCache;
+    private final InventoryService inventoryService;
+    private final PaymentProcessor paymentProcessor;
+    private final OutboxPublisher outbox;
+    private final TransactionTemplate tx;
 
-    @Value("${payment.rejection-probability:0.3}")
-    private double rejectionProb;
+    public OrderService(OrderRepository orderRepository,
+                        UserRepository userRepository,
+                        CardRepository cardRepository,
+                        ProductRepository productRepository,
+                        LogEventService logEventService,
+                        CartService cartService,
+                        CardTokenCache cardTokenCache,
+                        InventoryService inventoryService,
+                        PaymentProcessor paymentProcessor,
+                        OutboxPublisher outbox,
+                        PlatformTransactionManager transactionManager) {
+        this.orderRepository = orderRepository;
+        this.userRepository = userRepository;
+        this.cardRepository = cardRepository;
+        this.productRepository = productRepository;
+        this.logEventService = logEventService;
+        this.cartService = cartService;
+        this.cardTokenCache = cardTokenCache;
+        this.inventoryService = inventoryService;
+        this.paymentProcessor = paymentProcessor;
+        this.outbox = outbox;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
 
-    @Value("${payment.max-attempts:3}")
-    private int maxAttempts;
+    /** Orden reservada (fase 1) con lo necesario para cobrar y confirmar sin recargarla. */
+    public record PendingOrder(Long orderId, Long userId, String userEmail, Long cardId, String cardToken,
+                               BigDecimal total, Map<Long, Integer> products,
+                               String deliveryAddress, List<OrderFinalizedEvent.Item> items) {}
 
     /**
      * Crea la orden tomando los ítems del carrito del usuario.
      */
-    @Transactional
     public OrderDTO createOrderFromCart(Long userId, String cardToken, String address) {
         CartDTO cart = cartService.getCart(userId);
         if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
@@ -64,116 +109,315 @@ public class OrderService {
     }
 
     /**
-     * Crea la orden a partir de un mapa productId -> quantity.
-     * Verifica stock, intenta pago y SOLO descuenta stock si aprueba.
+     * Crea la orden a partir de un mapa productId -> quantity: reserva, cobra y confirma.
      */
-    @Transactional
     public OrderDTO createOrder(Long userId, String cardToken, String address, Map<Long, Integer> products) {
+        PendingOrder pending = reserve(userId, cardToken, address, products);
+        PaymentOutcome payment = pay(pending);
+        return confirm(pending, payment);
+    }
+
+    /**
+     * Fase 1 (transacción corta): valida, reserva stock y persiste la orden PENDING
+     * con snapshot de precios.
+     */
+    public PendingOrder reserve(Long userId, String cardToken, String address, Map<Long, Integer> products) {
         if (products == null || products.isEmpty()) {
             throw new IllegalArgumentException("No se enviaron productos.");
         }
         if (address == null || address.isBlank()) {
             throw new IllegalArgumentException("La dirección de entrega es obligatoria.");
         }
+        return tx.execute(status -> {
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+
+            // Autorización por cache token -> (cardId, userId): sin SELECT de la tarjeta ni descifrado
+            CardOwnership ownership = cardTokenCache.resolve(cardToken)
+                    .orElseThrow(() -> new RuntimeException("Tarjeta no encontrada"));
+
+            // La tarjeta debe pertenecer al usuario
+            if (!Objects.equals(ownership.userId(), userId)) {
+                throw new RuntimeException("La tarjeta no pertenece al usuario.");
+            }
+            Card card = cardRepository.getReferenceById(ownership.cardId()); // proxy, solo para la FK
+
+            // Traer productos (un solo SELECT) y pre-chequear stock (el definitivo es la reserva)
+            Map<Long, Product> productById = new HashMap<>();
+            for (Product p : productRepository.findAllById(products.keySet())) {
+                productById.put(p.getId(), p);
+            }
+            for (Map.Entry<Long, Integer> e : products.entrySet()) {
+                Long productId = e.getKey();
+                Integer quantity = e.getValue();
+                if (quantity == null || quantity <= 0) {
+                    throw new RuntimeException("Cantidad inválida para productId=" + productId);
+                }
+                Product p = productById.get(productId);
+                if (p == null) {
+                    throw new RuntimeException("Producto no encontrado: " + productId);
+                }
+                if (p.getStock() < quantity) {
+                    throw new RuntimeException("Stock insuficiente para " + p.getName());
+                }
+            }
+
+            // Reserva: UPDATE condicional por línea (o ledger para productos hot), en orden de id
+            inventoryService.reserve(products, id -> productById.get(id).getName());
+
+            // Order PENDING con snapshot de precios
+            Order order = Order.builder()
+                    .user(user)
+                    .card(card)
+                    .status("PENDING")
+                    .paymentState("NONE")
+                    .createdAt(LocalDateTime.now())
+                    .deliveryAddress(address)
+                    .attempts(0)
+                    .items(new ArrayList<>())
+                    .build();
+
+            BigDecimal total = BigDecimal.ZERO;
+            List<OrderFinalizedEvent.Item> snapshot = new ArrayList<>(products.size());
+            for (Map.Entry<Long, Integer> e : products.entrySet()) {
+                Product p = productById.get(e.getKey());
+                int qty = e.getValue();
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
-        Card card = cardRepository.findByToken(cardToken)
-                .orElseThrow(() -> new RuntimeException("Tarjeta no encontrada"));
+                BigDecimal unitPrice = p.getPrice(); // BigDecimal en Product
+                OrderItem item = OrderItem.builder()
+                        .order(order)
+                        .product(p)
+                        .quantity(qty)
+                        .unitPrice(unitPrice)
+                        .build();
 
-        // La tarjeta debe pertenecer al usuario
-        if (card.getUser() == null || !Objects.equals(card.getUser().getId(), userId)) {
-            throw new RuntimeException("La tarjeta no pertenece al usuario.");
+                order.getItems().add(item);
+                snapshot.add(new OrderFinalizedEvent.Item(p.getId(), p.getName(), qty, unitPrice));
+                total = total.add(unitPrice.multiply(BigDecimal.valueOf(qty)));
+            }
+            order.setTotal(total);
+            orderRepository.save(order); // cascade guarda items
+
+            return new PendingOrder(order.getId(), userId, user.getEmail(), ownership.cardId(), cardToken,
+                    total, Map.copyOf(products), address, List.copyOf(snapshot));
+        });
+    }
+
+    /** Estado actual de la orden (PENDING mientras se cobra en modo asíncrono). */
+    public OrderDTO status(Long orderId) {
+        return orderRepository.findStatusById(orderId)
+                .orElseThrow(() -> new NoSuchElementException("Orden no encontrada: " + orderId));
+    }
+
+    /**
+     * Fase 2 (sin transacción ni conexión): cobro con reintentos.
+     * Antes de cobrar marca la orden CHARGING (transacción corta): si ya venció no se cobra, y el
+     * barrido distingue una orden sin cobrar de una con un cobro en curso.
+     */
+    public PaymentOutcome pay(PendingOrder pending) {
+        Integer claimed = tx.execute(s -> orderRepository.markCharging(pending.orderId(), LocalDateTime.now()));
+        if (claimed == null || claimed == 0) {
+            log.warn("Orden {} ya no está PENDING: no se cobra", pending.orderId());
+            return new PaymentOutcome(false, 0, null);
+        }
+        try {
+            return paymentProcessor.charge(new PaymentRequest(pending.orderId(), pending.userId(),
+                    pending.cardId(), pending.cardToken(), pending.total(), 0));
+        } catch (RuntimeException e) {
+            // Cualquier falla inesperada se trata como rechazo: la fase 3 libera el stock
+            log.warn("Pago de orden {} abortado: {}", pending.orderId(), e.getMessage());
+            return new PaymentOutcome(false, 0, null);
         }
+    }
 
-        // 1) Traer productos y chequear stock
-        Map<Long, Product> productById = new HashMap<>();
-        for (Map.Entry<Long, Integer> e : products.entrySet()) {
-            Long productId = e.getKey();
-            Integer quantity = e.getValue();
-            if (quantity == null || quantity <= 0) {
-                throw new RuntimeException("Cantidad inválida para productId=" + productId);
+    /**
+     * Fase 3 (transacción corta): APPROVED o REJECTED + devolución de stock.
+     * El UPDATE solo aplica sobre órdenes PENDING, así una orden no se confirma dos veces.
+     * <p>
+     * Un cobro aprobado que no se puede registrar (la orden ya venció o la base falla tras
+     * {@value #RECORD_ATTEMPTS} intentos) se devuelve en la pasarela antes de propagar el error:
+     * nunca queda una tarjeta cobrada sobre una orden REJECTED o PENDING.
+     */
+    public OrderDTO confirm(PendingOrder pending, PaymentOutcome payment) {
+        String status = payment.approved() ? "APPROVED" : "REJECTED";
+        boolean recorded;
+        try {
+            recorded = payment.approved() ? recordWithRetry(pending, payment) : record(pending, payment);
+        } catch (RuntimeException e) {
+            if (payment.approved()) {
+                refundUnrecorded(pending.orderId(), payment.reference());
             }
-            Product p = productRepository.findById(productId)
-                    .orElseThrow(() -> new RuntimeException("Producto no encontrado: " + productId));
-            if (p.getStock() < quantity) {
-                throw new RuntimeException("Stock insuficiente para " + p.getName());
+            throw e;
+        }
+        if (!recorded) {
+            if (payment.approved()) {
+                refundUnrecorded(pending.orderId(), payment.reference());
             }
-            productById.put(productId, p);
+            throw new IllegalStateException("La orden " + pending.orderId() + " ya no está PENDING");
         }
 
-        // 2) Armar Order PENDING con snapshot de precios
-        Order order = Order.builder()
-                .user(user)
-                .card(card)
-                .status("PENDING")
-                .deliveryAddress(address)
-                .attempts(0)
-                .items(new ArrayList<>())
+        return OrderDTO.builder()
+                .id(pending.orderId())
+                .status(status)
+                .attempts(payment.attempts())
                 .build();
+    }
 
-        BigDecimal total = BigDecimal.ZERO;
-        for (Map.Entry<Long, Integer> e : products.entrySet()) {
-            Product p = productById.get(e.getKey());
-            int qty = e.getValue();
-
-            BigDecimal unitPrice = p.getPrice(); // BigDecimal en Product
-            OrderItem item = OrderItem.builder()
-                    .order(order)
-                    .product(p)
-                    .quantity(qty)
-                    .unitPrice(unitPrice)
-                    .build();
-
-            order.getItems().add(item);
-            total = total.add(unitPrice.multiply(BigDecimal.valueOf(qty)));
+    private boolean recordWithRetry(PendingOrder pending, PaymentOutcome payment) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return record(pending, payment);
+            } catch (RuntimeException e) {
+                if (attempt >= RECORD_ATTEMPTS) throw e;
+                log.warn("No se pudo registrar el cobro aprobado de la orden {} (intento {}): {}",
+                        pending.orderId(), attempt, e.getMessage());
+                try {
+                    Thread.sleep(RECORD_BACKOFF_MS * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
         }
-        order.setTotal(total);
-
-        // 3) Intentos de pago
-        for (int i = 1; i <= maxAttempts; i++) {
-            order.setAttempts(i);
-            if (ThreadLocalRandom.current().nextDouble() >= rejectionProb) {
-                order.setStatus("APPROVED");
-                break;
+    }
+
+    /** @return false si la orden ya no estaba PENDING (no se tocó nada) */
+    private boolean record(PendingOrder pending, PaymentOutcome payment) {
+        String status = payment.approved() ? "APPROVED" : "REJECTED";
+        return Boolean.TRUE.equals(tx.execute(s -> {
+            int updated = orderRepository.finalizeIfPending(pending.orderId(), status, payment.attempts(),
+                    payment.approved() ? "APPROVED" : "DECLINED", payment.reference());
+            if (updated == 0) {
+                return false;
+            }
+            if (!payment.approved()) {
+                inventoryService.release(pending.products()); // compensación
+            }
+
+            logEventService.log("ORDER_" + status,
+                    "Orden creada para user " + pending.userId() + " total=" + pending.total(), pending.userId());
+
+            // Outbox en la misma transacción: el correo sale si y solo si la confirmación commitea
+            outbox.append(OrderFinalizedEvent.TYPE, pending.orderId(), new OrderFinalizedEvent(
+                    pending.orderId(),
+                    pending.userId(),
+                    pending.userEmail(),
+                    status,
+                    payment.attempts(),
+                    pending.total(),
+                    pending.deliveryAddress(),
+                    pending.items()
+            ));
+            return true;
+        }));
+    }
+
+    /** Devuelve un cobro aprobado que no quedó registrado; si la pasarela falla, lo deja VOID_PENDING para el barrido. */
+    private void refundUnrecorded(Long orderId, String reference) {
+        log.warn("Cobro aprobado {} de la orden {} sin registrar: se devuelve", reference, orderId);
+        try {
+            paymentProcessor.refund(orderId, reference);
+        } catch (RuntimeException e) {
+            log.error("No se pudo devolver el cobro {} de la orden {}: {}", reference, orderId, e.getMessage());
+            try {
+                tx.executeWithoutResult(s -> orderRepository.markVoidPending(orderId, reference));
+            } catch (RuntimeException dbError) {
+                // Sin base tampoco: la orden sigue PENDING/CHARGING y el barrido la vence y anula
+                log.error("No se pudo marcar VOID_PENDING la orden {}: {}", orderId, dbError.getMessage());
             }
         }
-        if (!"APPROVED".equals(order.getStatus())) {
-            order.setStatus("REJECTED");
+    }
+
+    /**
+     * Compensación de una orden propia que nunca llegó a la fase 3 (error entre la reserva y la
+     * confirmación, u orden encolada al apagar). Equivale a {@link #expire(Long, LocalDateTime)} con
+     * corte ahora: quien llama sabe que no hay un cobro en curso para la orden.
+     */
+    public boolean expire(Long orderId) {
+        return expire(orderId, LocalDateTime.now());
+    }
+
+    /**
+     * REJECTED + devolución de stock para una orden PENDING, en una transacción corta.
+     * El UPDATE condicional exige el mismo estado de cobro que se leyó y que ningún cobro haya
+     * empezado después de {@code chargeCutoff}, así que no vence una orden que otro hilo acaba de
+     * empezar a cobrar ni una que la confirmación ya registró.
+     * <p>
+     * Si la orden tenía un cobro iniciado (CHARGING, o estado desconocido en filas viejas) queda
+     * VOID_PENDING y, tras el commit, se anula en la pasarela; si esa llamada falla el barrido la
+     * reintenta ({@link #retryVoid}). Una aprobación que llegue después la devuelve {@link #confirm}.
+     *
+     * @return true si la orden seguía PENDING y quedó rechazada
+     */
+    public boolean expire(Long orderId, LocalDateTime chargeCutoff) {
+        OrderPaymentView view = orderRepository.findPaymentView(orderId).orElse(null);
+        if (view == null || !"PENDING".equals(view.status())) {
+            return false;
         }
+        String expected = view.paymentState() == null ? "UNKNOWN" : view.paymentState();
+        boolean charged = !"NONE".equals(expected);
+
+        boolean expired = Boolean.TRUE.equals(tx.execute(s -> {
+            if (orderRepository.expireIfPending(orderId, expected, charged ? "VOID_PENDING" : "NONE",
+                    chargeCutoff) == 0) {
+                return false;
+            }
+            Order order = orderRepository.findByIdWithItems(orderId).orElseThrow();
 
-        // 4) Si aprueba, recién ahí descuenta stock
-        if ("APPROVED".equals(order.getStatus())) {
+            Map<Long, Integer> lines = new HashMap<>();
+            List<OrderFinalizedEvent.Item> items = new ArrayList<>(order.getItems().size());
             for (OrderItem it : order.getItems()) {
                 Product p = it.getProduct();
-                int remaining = p.getStock() - it.getQuantity();
-                if (remaining < 0) {
-                    throw new RuntimeException("Stock insuficiente al confirmar: " + p.getName());
-                }
-                p.setStock(remaining);
-                productRepository.save(p);
+                lines.merge(p.getId(), it.getQuantity(), Integer::sum);
+                items.add(new OrderFinalizedEvent.Item(p.getId(), p.getName(), it.getQuantity(), it.getUnitPrice()));
             }
+            inventoryService.release(lines); // compensación
+
+            User user = order.getUser();
+            logEventService.log("ORDER_EXPIRED",
+                    "Orden " + orderId + " rechazada por quedar PENDING para user " + user.getId(), user.getId());
+            outbox.append(OrderFinalizedEvent.TYPE, orderId, new OrderFinalizedEvent(
+                    orderId,
+                    user.getId(),
+                    user.getEmail(),
+                    "REJECTED",
+                    order.getAttempts(),
+                    order.getTotal(),
+                    order.getDeliveryAddress(),
+                    items
+            ));
+            return true;
+        }));
+
+        if (expired && charged) {
+            voidCharge(orderId, view.paymentReference());
         }
+        return expired;
+    }
 
-        // 5) Persistir y loguear
-        orderRepository.save(order); // cascade guarda items
-        logEventService.log("ORDER_" + order.getStatus(),
-                "Orden creada para user " + userId + " total=" + total, userId);
-
-        // 6) Publicar evento para envío de correo AFTER_COMMIT (asíncrono)
-        events.publishEvent(new OrderFinalizedEvent(
-                order.getId(),
-                userId,
-                user.getEmail(),
-                order.getStatus(),
-                order.getAttempts(),
-                order.getTotal()
-        ));
+    /**
+     * Reintenta la anulación de una orden REJECTED con el cobro VOID_PENDING.
+     *
+     * @return true si la pasarela confirmó la anulación
+     */
+    public boolean retryVoid(Long orderId) {
+        OrderPaymentView view = orderRepository.findPaymentView(orderId).orElse(null);
+        if (view == null || !"REJECTED".equals(view.status()) || !"VOID_PENDING".equals(view.paymentState())) {
+            return false;
+        }
+        return voidCharge(orderId, view.paymentReference());
+    }
 
-        return OrderDTO.builder()
-                .id(order.getId())
-                .status(order.getStatus())
-                .attempts(order.getAttempts())
-                .build();
+    /** Sin referencia anula cualquier cobro de la orden (el resultado nunca se registró). */
+    private boolean voidCharge(Long orderId, String reference) {
+        try {
+            paymentProcessor.refund(orderId, reference);
+        } catch (RuntimeException e) {
+            log.warn("No se pudo anular el cobro de la orden {} (se reintenta en el próximo barrido): {}",
+                    orderId, e.getMessage());
+            return false;
+        }
+        tx.executeWithoutResult(s -> orderRepository.markVoided(orderId));
+        return true;
     }
 }
@@ -0,0 +1,285 @@
+package com.challenge.tokenizacion_app.service;
+
+import com.challenge.tokenizacion_app.dto.CartDTO;
+import com.challenge.tokenizacion_app.dto.CartItemDTO;
+import com.challenge.tokenizacion_app.dto.OrderDTO;
+import com.challenge.tokenizacion_app.payment.PaymentOutcome;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Envío asíncrono de órdenes ({@code POST /api/orders?async=true}).
+ * <p>
+ * En el hilo del request solo se valida y se ejecuta la fase de reserva de {@link OrderService}
+ * (una transacción corta que entrega el id de la orden PENDING). El cobro con reintentos y la
+ * confirmación corren en un pool fijo de {@code workers} con una cola acotada; el cliente recibe
+ * 202 y consulta {@code GET /api/orders/{id}/status}.
+ * <p>
+ * La admisión se controla con un semáforo de {@code workers + queue-capacity} permisos que se
+ * toma <i>antes</i> de reservar: si no hay lugar no se toca el stock. Con la cola llena se aplica
+ * {@code rejection}:
+ * <ul>
+ *   <li>REJECT: 503 ({@link OrderQueueFullException}).</li>
+ *   <li>SYNC: la orden se procesa en línea, como el modo síncrono.</li>
+ * </ul>
+ * Una orden que falla en el worker, o que sigue en la cola al apagar, se rechaza con devolución
+ * de stock ({@link OrderService#expire}) sin perder un cobro: la confirmación devuelve una
+ * aprobación que no pudo registrar y la compensación nunca rechaza una orden APPROVED y anula
+ * cualquier cobro iniciado. Lo que ni eso alcance lo recoge {@link PendingOrderSweeper}.
+ */
+@Service
+@Slf4j
+public class OrderSubmissionService implements SmartLifecycle {
+
+    public enum Rejection { REJECT, SYNC }
+
+    private final OrderService orderService;
+    private final CartService cartService;
+    private final boolean enabled;
+    private final Rejection rejection;
+    private final Duration offerTimeout;
+    private final Semaphore permits;
+    private final ThreadPoolExecutor executor;
+
+    private final Timer queueTime;
+    private final Counter rejected;
+    private final Counter syncFallback;
+
+    private volatile boolean running;
+
+    public OrderSubmissionService(OrderService orderService,
+                                  CartService cartService,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${orders.async.enabled:true}") boolean enabled,
+                                  @Value("${orders.async.workers:8}") int workers,
+                                  @Value("${orders.async.queue-capacity:500}") int queueCapacity,
+                                  @Value("${orders.async.offer-timeout:0ms}") Duration offerTimeout,
+                                  @Value("${orders.async.rejection:REJECT}") Rejection rejection) {
+        this.orderService = orderService;
+        this.cartService = cartService;
+        this.enabled = enabled;
+        this.rejection = rejection;
+        this.offerTimeout = offerTimeout;
+
+        int poolSize = Math.max(1, workers);
+        int capacity = Math.max(1, queueCapacity);
+        this.permits = new Semaphore(poolSize + capacity);
+        AtomicInteger seq = new AtomicInteger();
+        // La cola nunca se desborda: el semáforo limita lo admitido a workers + capacity
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                r -> {
+                    Thread t = new Thread(r, "order-worker-" + seq.incrementAndGet());
+                    t.setDaemon(false);
+                    return t;
+                });
+
+        Gauge.builder("orders.async.queue.depth", executor, e -> e.getQueue().size())
+                .description("Órdenes aceptadas esperando un worker")
+                .register(meterRegistry);
+        Gauge.builder("orders.async.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Órdenes en proceso de cobro/confirmación")
+                .register(meterRegistry);
+        this.queueTime = Timer.builder("orders.async.queue.time")
+                .description("Tiempo entre el 202 y el inicio del cobro")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("orders.async.rejected").register(meterRegistry);
+        this.syncFallback = Counter.builder("orders.async.sync_fallback").register(meterRegistry);
+    }
+
+    /**
+     * Valida, reserva y encola el cobro. Devuelve la orden PENDING si quedó encolada, o la orden
+     * ya finalizada si se procesó en línea (async deshabilitado o rejection=SYNC con cola llena).
+     * Sin {@code products} se usan los ítems del carrito, que se limpia si la orden se aprueba.
+     */
+    public OrderDTO submit(Long userId, String cardToken, String address, Map<Long, Integer> products) {
+        if (cardToken == null || cardToken.isBlank()) {
+            throw new IllegalArgumentException("cardToken es requerido");
+        }
+        boolean fromCart = products == null || products.isEmpty();
+        Map<Long, Integer> lines = fromCart ? cartProducts(userId) : products;
+
+        if (!isRunning()) {
+            return processInline(userId, cardToken, address, lines, fromCart);
+        }
+        if (!acquire()) {
+            if (rejection == Rejection.SYNC) {
+                syncFallback.increment();
+                return processInline(userId, cardToken, address, lines, fromCart);
+            }
+            rejected.increment();
+            throw new OrderQueueFullException("Demasiadas órdenes en proceso; intenta de nuevo en unos segundos.");
+        }
+
+        OrderService.PendingOrder pending;
+        try {
+            pending = orderService.reserve(userId, cardToken, address, lines);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        QueuedOrder task = new QueuedOrder(pending, fromCart, System.nanoTime());
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Solo ocurre si el pool se está apagando: se completa en el hilo del request
+            task.run();
+            return orderService.status(pending.orderId());
+        }
+
+        return OrderDTO.builder()
+                .id(pending.orderId())
+                .status("PENDING")
+                .attempts(0)
+                .build();
+    }
+
+    /**
+     * Cobro + confirmación de una orden ya reservada; ante cualquier falla se compensa.
+     * Si el cobro se aprobó y la confirmación no pudo registrarlo, {@link OrderService#confirm} ya lo
+     * devolvió (o lo dejó VOID_PENDING) antes de lanzar; si la falla fue posterior (la orden quedó
+     * APPROVED), {@link OrderService#expire} no la toca.
+     */
+    private final class QueuedOrder implements Runnable {
+        private final OrderService.PendingOrder pending;
+        private final boolean fromCart;
+        private final long enqueuedAt;
+
+        QueuedOrder(OrderService.PendingOrder pending, boolean fromCart, long enqueuedAt) {
+            this.pending = pending;
+            this.fromCart = fromCart;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            try {
+                queueTime.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                complete(pending, fromCart);
+            } catch (RuntimeException e) {
+                log.error("Falló el procesamiento asíncrono de la orden {}: {}", pending.orderId(), e.getMessage());
+                compensate(pending.orderId());
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Rechaza la orden y devuelve su stock si sigue PENDING; un cobro iniciado queda VOID_PENDING y
+     * se anula en la pasarela. Si tampoco se puede (p.ej. la DB no responde), la orden queda para
+     * {@link PendingOrderSweeper}.
+     */
+    private void compensate(Long orderId) {
+        try {
+            orderService.expire(orderId);
+        } catch (RuntimeException e) {
+            log.warn("No se pudo compensar la orden {} (la rechazará el barrido de PENDING): {}", orderId, e.getMessage());
+        }
+    }
+
+    private boolean acquire() {
+        if (offerTimeout.isZero() || offerTimeout.isNegative()) {
+            return permits.tryAcquire();
+        }
+        try {
+            return permits.tryAcquire(offerTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private OrderDTO processInline(Long userId, String cardToken, String address,
+                                   Map<Long, Integer> lines, boolean fromCart) {
+        return complete(orderService.reserve(userId, cardToken, address, lines), fromCart);
+    }
+
+    private OrderDTO complete(OrderService.PendingOrder pending, boolean fromCart) {
+        PaymentOutcome payment = orderService.pay(pending);
+        OrderDTO dto = orderService.confirm(pending, payment);
+        if (fromCart && "APPROVED".equalsIgnoreCase(dto.getStatus())) {
+            cartService.clearCart(pending.userId());
+        }
+        return dto;
+    }
+
+    private Map<Long, Integer> cartProducts(Long userId) {
+        CartDTO cart = cartService.getCart(userId);
+        if (cart == null || cart.getItems() == null || cart.getItems().isEmpty()) {
+            throw new IllegalArgumentException("El carrito está vacío.");
+        }
+        return cart.getItems().stream()
+                .collect(Collectors.toMap(CartItemDTO::getProductId, CartItemDTO::getQuantity, Integer::sum));
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        executor.prestartAllCoreThreads();
+        log.info("Órdenes asíncronas activas (workers={}, capacidad={}, rejection={})",
+                executor.getCorePoolSize(), executor.getQueue().remainingCapacity(), rejection);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdown();
+
+        // Las órdenes encoladas ya tienen stock reservado pero nunca llegaron a cobrarse (payment_state
+        // NONE): se rechazan y se devuelve su stock en vez de abandonarlas
+        List<Runnable> unstarted = new ArrayList<>();
+        executor.getQueue().drainTo(unstarted);
+        for (Runnable r : unstarted) {
+            compensate(((QueuedOrder) r).pending.orderId());
+            permits.release();
+        }
+        if (!unstarted.isEmpty()) {
+            log.warn("Órdenes encoladas rechazadas al apagar (stock devuelto): {}", unstarted.size());
+        }
+
+        // Las que ya están en cobro se terminan; si no alcanzan, las compensa PendingOrderSweeper
+        try {
+            if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                log.warn("Quedaron {} órdenes en cobro al apagar; las rechazará el barrido de PENDING",
+                        executor.getActiveCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Por debajo del servidor web ({@code DEFAULT_PHASE - 2048}, que se detiene antes): no entran
+     * requests nuevos mientras se drena la cola. Por encima del ledger y la auditoría asíncrona
+     * ({@code DEFAULT_PHASE - 4096}), que siguen activos para la devolución de stock y los eventos
+     * de confirmación.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+}
@@ -0,0 +1,161 @@
+package com.challenge.tokenizacion_app.service;
+
+import com.challenge.tokenizacion_app.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Red de seguridad del checkout en 3 fases: la reserva commitea stock y una orden PENDING antes
+ * de cobrar, así que una caída, un kill o un error entre la reserva y la confirmación dejarían la
+ * orden PENDING y el stock reservado para siempre.
+ * <p>
+ * Cada {@code orders.sweep-interval} busca órdenes PENDING cuya reserva (o cobro, si empezó) tiene
+ * más de {@code orders.pending-timeout} y las compensa con {@link OrderService#expire(Long, LocalDateTime)}
+ * (REJECTED + devolución de stock en la misma transacción). El UPDATE condicional evita carreras con
+ * una confirmación tardía, con un cobro que empieza en ese momento o con el barrido de otra instancia.
+ * <p>
+ * Una orden vencida con un cobro iniciado queda VOID_PENDING y se anula en la pasarela; las
+ * anulaciones que fallan se reintentan en cada barrido ({@link OrderService#retryVoid}). Si el cobro
+ * termina aprobándose después, la confirmación lo devuelve.
+ * <p>
+ * El timeout debe superar la duración máxima de un cobro (todos los intentos con su backoff) y la
+ * espera en la cola asíncrona: con uno menor se anularían cobros sanos todavía en curso.
+ * Métricas: {@code orders.pending.expired}, {@code orders.payment.voided}.
+ */
+@Component
+@Slf4j
+public class PendingOrderSweeper implements SmartLifecycle {
+
+    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+    private final boolean enabled;
+    private final Duration pendingTimeout;
+    private final Duration interval;
+    private final int batchSize;
+    private final Counter expired;
+    private final Counter voided;
+
+    private ScheduledExecutorService sweeper;
+    private volatile boolean running;
+
+    public PendingOrderSweeper(OrderRepository orderRepository,
+                               OrderService orderService,
+                               MeterRegistry meterRegistry,
+                               @Value("${orders.sweep.enabled:true}") boolean enabled,
+                               @Value("${orders.pending-timeout:15m}") Duration pendingTimeout,
+                               @Value("${orders.sweep.interval:1m}") Duration interval,
+                               @Value("${orders.sweep.batch-size:100}") int batchSize) {
+        this.orderRepository = orderRepository;
+        this.orderService = orderService;
+        this.enabled = enabled;
+        this.pendingTimeout = pendingTimeout;
+        this.interval = interval;
+        this.batchSize = Math.max(1, batchSize);
+        this.expired = Counter.builder("orders.pending.expired")
+                .description("Órdenes PENDING vencidas, rechazadas con devolución de stock")
+                .register(meterRegistry);
+        this.voided = Counter.builder("orders.payment.voided")
+                .description("Cobros de órdenes vencidas anulados en un reintento del barrido")
+                .register(meterRegistry);
+    }
+
+    /** Compensa todas las PENDING vencidas y reintenta las anulaciones pendientes; devuelve cuántas rechazó. */
+    int sweep() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(pendingTimeout);
+        int count = 0;
+        long afterId = 0;
+        List<Long> ids;
+        do {
+            ids = orderRepository.findStalePendingIds(cutoff, afterId, Limit.of(batchSize));
+            for (Long id : ids) {
+                afterId = id;
+                try {
+                    if (orderService.expire(id, cutoff)) {
+                        expired.increment();
+                        count++;
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("No se pudo compensar la orden PENDING {} (se reintenta en el próximo barrido): {}",
+                            id, e.getMessage());
+                }
+            }
+        } while (ids.size() == batchSize);
+        if (count > 0) {
+            log.warn("Órdenes PENDING vencidas (> {}) rechazadas y con stock devuelto: {}", pendingTimeout, count);
+        }
+        retryVoids();
+        return count;
+    }
+
+    private void retryVoids() {
+        long afterId = 0;
+        List<Long> ids;
+        do {
+            ids = orderRepository.findVoidPendingIds(afterId, Limit.of(batchSize));
+            for (Long id : ids) {
+                afterId = id;
+                try {
+                    if (orderService.retryVoid(id)) {
+                        voided.increment();
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("No se pudo anular el cobro de la orden {}: {}", id, e.getMessage());
+                }
+            }
+        } while (ids.size() == batchSize);
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        } catch (Exception e) {
+            log.warn("Fallo el barrido de órdenes PENDING: {}", e.getMessage());
+        }
+    }
+
+    /* ----------------- Ciclo de vida ----------------- */
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pending-order-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        // Primer barrido al arrancar: recupera lo que dejó una caída anterior
+        long every = Math.max(1, interval.toMillis());
+        sweeper.scheduleWithFixedDelay(this::sweepQuietly, 0, every, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        sweeper.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Arranca después del ledger (la compensación le devuelve stock) y se detiene antes. */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+}
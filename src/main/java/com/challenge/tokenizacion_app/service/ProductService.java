@@ -1,14 +1,24 @@
 package com.challenge.tokenizacion_app.service;
 
+import com.challenge.tokenizacion_app.cache.ProductCatalogSnapshot;
+import com.challenge.tokenizacion_app.dto.CursorPageDTO;
 import com.challenge.tokenizacion_app.dto.ProductDTO;
 import com.challenge.tokenizacion_app.model.entity.Product;
 import com.challenge.tokenizacion_app.repository.ProductRepository;
+import com.challenge.tokenizacion_app.search.ProductSearchIndex;
 import org.springframework.beans.factory.annotation.Value;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
@@ -16,7 +26,13 @@ public class ProductService {
 
     @Value("${business.min-stock-visible:1}")
     private int minStockVisible;
+    @Value("${search.products.max-page-size:100}")
+    private int maxSearchPageSize;
+    @Value("${api.pagination.max-page-size:200}")
+    private int maxPageSize;
     private final ProductRepository productRepository;
+    private final ProductCatalogSnapshot catalog;
+    private final ProductSearchIndex searchIndex;
 
 
     public ProductDTO createProduct(ProductDTO productDTO) {
@@ -27,6 +43,8 @@ public class ProductService {
                 .build();
 
         productRepository.save(product);
+        searchIndex.upsert(product.getId(), product.getName());
+        catalog.markDirty();
 
         return ProductDTO.builder()
                 .id(product.getId())
@@ -36,9 +54,32 @@ public class ProductService {
                 .build();
     }
 
-    public List<ProductDTO> searchProducts(String name) {
-        return productRepository.findByNameContainingIgnoreCase(name).stream()
-                .filter(p -> p.getStock() > 0) // parámetro configurable
+    /**
+     * Búsqueda por nombre (subcadena/prefijo, sin tildes ni mayúsculas) sobre el índice en memoria,
+     * ordenada por relevancia. Mientras el índice carga, o sin snapshot del catálogo, se usa la
+     * consulta LIKE de la DB.
+     */
+    public Page<ProductDTO> searchProducts(String name, int page, int size) {
+        if (page < 0) throw new IllegalArgumentException("'page' no puede ser negativo");
+        size = Math.max(1, Math.min(size, maxSearchPageSize));
+        Pageable pageable = PageRequest.of(page, size);
+        ProductCatalogSnapshot.Snapshot snapshot = catalog.current();
+        if (!searchIndex.isReady() || snapshot == null) {
+            return searchInDatabase(name, pageable);
+        }
+        ProductSearchIndex.Hits hits = searchIndex.search(name, id -> snapshot.find(id) != null, page, size);
+        List<ProductDTO> content = hits.ids().stream()
+                .map(snapshot::find)
+                .filter(Objects::nonNull)
+                .map(ProductService::toDto)
+                .toList();
+        return new PageImpl<>(content, pageable, hits.total());
+    }
+
+    private Page<ProductDTO> searchInDatabase(String name, Pageable pageable) {
+        List<ProductDTO> all = productRepository.findByNameContainingIgnoreCase(name).stream()
+                .filter(p -> p.getStock() != null && p.getStock() >= minStockVisible)
+                .sorted(Comparator.comparing(Product::getName))
                 .map(p -> ProductDTO.builder()
                         .id(p.getId())
                         .name(p.getName())
@@ -46,18 +87,75 @@ public class ProductService {
                         .stock(p.getStock())
                         .build())
                 .toList();
+        int from = (int) Math.min(all.size(), pageable.getOffset());
+        int to = Math.min(all.size(), from + pageable.getPageSize());
+        return new PageImpl<>(all.subList(from, to), pageable, all.size());
+    }
+
+    /**
+     * Página keyset del catálogo visible sobre (name, id), servida desde el snapshot en memoria:
+     * ni query ni entidades. El cursor sigue siendo válido aunque el snapshot se reconstruya.
+     * Sin snapshot (deshabilitado) la misma página sale de la DB con una proyección.
+     */
+    public CursorPageDTO<ProductDTO> listProducts(String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        String afterName = null;
+        long afterId = 0L;
+        String raw = Cursors.decode(cursor);
+        if (raw != null) {
+            int sep = raw.lastIndexOf('|'); // el nombre puede contener '|', el id no
+            try {
+                afterName = raw.substring(0, sep);
+                afterId = Long.parseLong(raw.substring(sep + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido");
+            }
+        }
+
+        ProductCatalogSnapshot.Snapshot snapshot = catalog.current();
+        List<ProductDTO> rows;
+        if (snapshot != null) {
+            rows = snapshot.after(afterName, afterId, size + 1).stream().map(ProductService::toDto).toList();
+        } else if (afterName == null) {
+            rows = productRepository.findVisiblePage(minStockVisible, Limit.of(size + 1));
+        } else {
+            rows = productRepository.findVisiblePageAfter(minStockVisible, afterName, afterId, Limit.of(size + 1));
+        }
+        boolean hasMore = rows.size() > size;
+        List<ProductDTO> page = hasMore ? rows.subList(0, size) : rows;
+        String next = null;
+        if (hasMore) {
+            ProductDTO last = page.get(size - 1);
+            next = Cursors.encode(last.getName() + "|" + last.getId());
+        }
+        return CursorPageDTO.<ProductDTO>builder()
+                .items(page)
+                .hasMore(hasMore)
+                .nextCursor(next)
+                .build();
     }
 
+    /**
+     * Catálogo visible desde el snapshot en memoria (sin query); ver {@link ProductCatalogSnapshot}.
+     * Sin snapshot (deshabilitado) se lee de la DB.
+     */
     public List<ProductDTO> listAllProducts() {
+        ProductCatalogSnapshot.Snapshot snapshot = catalog.current();
+        if (snapshot != null) {
+            return snapshot.items().stream().map(ProductService::toDto).toList();
+        }
         return productRepository.findAll(Sort.by(Sort.Direction.ASC, "name")).stream()
                 .filter(p -> p.getStock() != null && p.getStock() >= minStockVisible)
-                .map(p -> ProductDTO.builder()
-                        .id(p.getId())
-                        .name(p.getName())
-                        .price(p.getPrice())
-                        .stock(p.getStock())
-                        .build())
+                .map(ProductDTO::fromEntity)
                 .toList();
     }
-}
 
+    private static ProductDTO toDto(ProductCatalogSnapshot.Item p) {
+        return ProductDTO.builder()
+                .id(p.id())
+                .name(p.name())
+                .price(p.price())
+                .stock(p.stock())
+                .build();
+    }
+}
@@ -1,10 +1,14 @@
 package com.challenge.tokenizacion_app.service;
 
+import com.challenge.tokenizacion_app.dto.CursorPageDTO;
 import com.challenge.tokenizacion_app.dto.UserDTO;
 import com.challenge.tokenizacion_app.model.entity.User;
 import com.challenge.tokenizacion_app.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -14,6 +18,9 @@ public class UserService {
 
     private final UserRepository userRepository;
 
+    @Value("${api.pagination.max-page-size:200}")
+    private int maxPageSize;
+
     public UserDTO createUser(UserDTO dto) {
         if (userRepository.existsByEmail(dto.getEmail())) {
             throw new RuntimeException("Email ya registrado");
@@ -34,10 +41,21 @@ public class UserService {
         return mapToDTO(user);
     }
 
-    public List<UserDTO> getAllUsers() {
-        return userRepository.findAll().stream()
-                .map(this::mapToDTO)
-                .toList();
+    /**
+     * Página keyset por id: proyección directa a UserDTO y una fila extra para saber si
+     * hay más, sin COUNT ni OFFSET.
+     */
+    @Transactional(readOnly = true, timeoutString = "${api.pagination.query-timeout:2}")
+    public CursorPageDTO<UserDTO> getUsers(String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        List<UserDTO> rows = userRepository.findPageAfter(Cursors.decodeId(cursor), Limit.of(size + 1));
+        boolean hasMore = rows.size() > size;
+        List<UserDTO> items = hasMore ? rows.subList(0, size) : rows;
+        return CursorPageDTO.<UserDTO>builder()
+                .items(items)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? Cursors.encode(String.valueOf(items.get(size - 1).getId())) : null)
+                .build();
     }
 
     private UserDTO mapToDTO(User user) {
@@ -1,10 +1,17 @@
 package com.challenge.tokenizacion_app.web;
 
+import com.challenge.tokenizacion_app.idempotency.IdempotencyConflictException;
+import com.challenge.tokenizacion_app.idempotency.IdempotencyKeyMismatchException;
+import com.challenge.tokenizacion_app.service.OrderQueueFullException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.validation.BindException;
@@ -113,6 +120,32 @@ public class GlobalExceptionHandler {
                 "El recurso fue modificado por otra transacción. Intenta de nuevo.", req);
     }
 
+    @ExceptionHandler(OrderQueueFullException.class)
+    ResponseEntity<ProblemDetail> handleOrderQueueFull(OrderQueueFullException ex, HttpServletRequest req) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(pd(HttpStatus.SERVICE_UNAVAILABLE, "Cola de órdenes llena", ex.getMessage(), req));
+    }
+
+    /* -------- Idempotencia -------- */
+
+    @ExceptionHandler(IdempotencyConflictException.class)
+    ProblemDetail handleIdempotencyConflict(IdempotencyConflictException ex, HttpServletRequest req) {
+        return pd(HttpStatus.CONFLICT, "Solicitud en proceso", ex.getMessage(), req);
+    }
+
+    @ExceptionHandler(IdempotencyKeyMismatchException.class)
+    ProblemDetail handleIdempotencyMismatch(IdempotencyKeyMismatchException ex, HttpServletRequest req) {
+        return pd(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key reutilizada", ex.getMessage(), req);
+    }
+
+    /* -------- Jobs batch -------- */
+
+    @ExceptionHandler({JobExecutionAlreadyRunningException.class, JobInstanceAlreadyCompleteException.class})
+    ProblemDetail handleJobConflict(Exception ex, HttpServletRequest req) {
+        return pd(HttpStatus.CONFLICT, "Job en conflicto", ex.getMessage(), req);
+    }
+
     /* -------- Seguridad -------- */
 
     @ExceptionHandler(AccessDeniedException.class)
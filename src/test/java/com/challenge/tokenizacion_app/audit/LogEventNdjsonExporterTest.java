@@ -0,0 +1,121 @@
+package com.challenge.tokenizacion_app.audit;
+
+import com.challenge.tokenizacion_app.repository.LogEventJdbcRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * El export NDJSON debe leer en streaming: exportar un millón de filas desde H2 no puede
+ * hacer crecer el heap más allá de un margen fijo (materializar List&lt;LogEvent&gt; de ese
+ * tamaño ocuparía cientos de MB).
+ */
+class LogEventNdjsonExporterTest {
+
+    private static final int ROWS = 1_000_000;
+    private static final long MAX_HEAP_GROWTH = 64L * 1024 * 1024;
+
+    private static DriverManagerDataSource dataSource;
+    private static LogEventNdjsonExporter exporter;
+
+    @BeforeAll
+    static void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:ndjson_export;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE logs (id UUID PRIMARY KEY, event_type VARCHAR(255), "
+                + "message VARCHAR(255), user_id BIGINT, timestamp TIMESTAMP)");
+        jdbc.execute("CREATE INDEX idx_logs_ts_id ON logs (timestamp, id)");
+        jdbc.execute("INSERT INTO logs SELECT RANDOM_UUID(), 'ORDER_APPROVED', CONCAT('orden ', X), "
+                + "MOD(X, 1000), DATEADD('SECOND', X, TIMESTAMP '2025-01-01 00:00:00') "
+                + "FROM SYSTEM_RANGE(1, " + ROWS + ")");
+
+        exporter = new LogEventNdjsonExporter(new LogEventJdbcRepository(jdbc),
+                new DataSourceTransactionManager(dataSource), 1000, 1000);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void exportingAMillionRowsKeepsHeapFlat() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+
+        HeapSamplingSink sink = new HeapSamplingSink(memory);
+        long written = exporter.export(null, null, null, null, false, sink);
+
+        assertEquals(ROWS, written);
+        assertEquals(ROWS, sink.lines);
+        long growth = sink.maxUsed - baseline;
+        assertTrue(growth < MAX_HEAP_GROWTH,
+                "El heap creció " + (growth / (1024 * 1024)) + " MB durante el export");
+    }
+
+    @Test
+    void gzipExportIsValidNdjson() throws Exception {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        long written = exporter.export(7L, null, null, LocalDateTime.of(2025, 1, 1, 1, 0), true, buf);
+
+        String text;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = text.split("\n");
+        assertEquals(written, lines.length);
+        assertTrue(written > 0);
+        assertTrue(lines[0].startsWith("{\"id\":\""));
+        assertTrue(lines[0].contains("\"userId\":7"));
+    }
+
+    /** Descarta la salida, cuenta líneas y mide el heap (tras GC) cada ~16 MB escritos. */
+    private static final class HeapSamplingSink extends OutputStream {
+        private static final long SAMPLE_EVERY = 16L * 1024 * 1024;
+        private final MemoryMXBean memory;
+        private long bytes;
+        private long nextSample = SAMPLE_EVERY;
+        long lines;
+        long maxUsed;
+
+        HeapSamplingSink(MemoryMXBean memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') lines++;
+            advance(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) if (b[i] == '\n') lines++;
+            advance(len);
+        }
+
+        private void advance(int n) {
+            bytes += n;
+            if (bytes >= nextSample) {
+                nextSample += SAMPLE_EVERY;
+                System.gc();
+                maxUsed = Math.max(maxUsed, memory.getHeapMemoryUsage().getUsed());
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.challenge.tokenizacion_app.benchmark;
+
+import com.challenge.tokenizacion_app.security.crypto.AesGcmStringCryptoConverter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara el converter original (Cipher.getInstance + buffers por operación) contra el
+ * converter actual respaldado por {@code AesGcmEngine}.
+ * <p>
+ * Ejecutar (ops/s y bytes asignados por op en {@code gc.alloc.rate.norm}):
+ * <pre>
+ * ./mvnw -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *      com.challenge.tokenizacion_app.benchmark.AesGcmConverterBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AesGcmConverterBenchmark {
+
+    private static final String KEY_B64 = "ymI5Oo2g2bXWS4FFW/okZI1bXTtvxSVQGXQVx9VhK+I=";
+
+    @Param({"123", "2028-12"})
+    public String plain;
+
+    private LegacyConverter legacy;
+    private AesGcmStringCryptoConverter current;
+    private String legacyCipherText;
+    private String currentCipherText;
+
+    @Setup
+    public void setup() {
+        System.setProperty("AES_GCM_KEY_BASE64", KEY_B64);
+        legacy = new LegacyConverter(new SecretKeySpec(Base64.getDecoder().decode(KEY_B64), "AES"));
+        current = new AesGcmStringCryptoConverter();
+        legacyCipherText = legacy.convertToDatabaseColumn(plain);
+        currentCipherText = current.convertToDatabaseColumn(plain);
+
+        // El formato debe ser intercambiable en ambos sentidos
+        if (!plain.equals(current.convertToEntityAttribute(legacyCipherText))
+                || !plain.equals(legacy.convertToEntityAttribute(currentCipherText))) {
+            throw new IllegalStateException("Formato incompatible entre converter original y actual");
+        }
+    }
+
+    @Benchmark
+    public String encryptLegacy() {
+        return legacy.convertToDatabaseColumn(plain);
+    }
+
+    @Benchmark
+    public String encryptEngine() {
+        return current.convertToDatabaseColumn(plain);
+    }
+
+    @Benchmark
+    public String decryptLegacy() {
+        return legacy.convertToEntityAttribute(legacyCipherText);
+    }
+
+    @Benchmark
+    public String decryptEngine() {
+        return current.convertToEntityAttribute(currentCipherText);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(AesGcmConverterBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    /** Copia fiel de la implementación previa del converter, como línea base. */
+    static final class LegacyConverter {
+        private static final int NONCE_LEN = 12;
+        private static final int TAG_LEN_BITS = 128;
+        private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+        private static final String VERSION = "v1:";
+        private static final SecureRandom RNG = new SecureRandom();
+
+        private final SecretKeySpec key;
+
+        LegacyConverter(SecretKeySpec key) {
+            this.key = key;
+        }
+
+        String convertToDatabaseColumn(String attribute) {
+            try {
+                byte[] nonce = new byte[NONCE_LEN];
+                RNG.nextBytes(nonce);
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LEN_BITS, nonce));
+                byte[] cipherText = cipher.doFinal(attribute.getBytes(StandardCharsets.UTF_8));
+                ByteBuffer bb = ByteBuffer.allocate(NONCE_LEN + cipherText.length);
+                bb.put(nonce);
+                bb.put(cipherText);
+                return VERSION + Base64.getEncoder().encodeToString(bb.array());
+            } catch (Exception e) {
+                throw new IllegalStateException("Error cifrando campo", e);
+            }
+        }
+
+        String convertToEntityAttribute(String dbData) {
+            try {
+                byte[] all = Base64.getDecoder().decode(dbData.substring(VERSION.length()));
+                byte[] nonce = new byte[NONCE_LEN];
+                byte[] cipherText = new byte[all.length - NONCE_LEN];
+                System.arraycopy(all, 0, nonce, 0, NONCE_LEN);
+                System.arraycopy(all, NONCE_LEN, cipherText, 0, cipherText.length);
+                Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LEN_BITS, nonce));
+                return new String(cipher.doFinal(cipherText), StandardCharsets.UTF_8);
+            } catch (Exception e) {
+                throw new IllegalStateException("Error descifrando campo", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.challenge.tokenizacion_app.benchmark;
+
+import com.challenge.tokenizacion_app.service.CardInput;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validación + normalización de una tarjeta por request: {@link CardInput#parse} (una pasada
+ * sobre los chars, con Luhn) contra la validación anterior de CardService (regex sin compilar,
+ * split, String.format y YearMonth.parse, con la expiración validada dos veces y sin Luhn).
+ * <p>
+ * Ejecutar (tiempo por tarjeta y bytes asignados por op en {@code gc.alloc.rate.norm}):
+ * <pre>
+ * ./mvnw -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *      com.challenge.tokenizacion_app.benchmark.CardInputBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CardInputBenchmark {
+
+    @Param({"09/28", "2028-09"})
+    public String expiry;
+
+    private final String number = "4111111111111111";
+    private final String cvv = "123";
+
+    @Setup
+    public void setup() {
+        if (!CardInput.parse(number, cvv, expiry).expiryDate().equals(Legacy.normalize(number, cvv, expiry)[2])) {
+            throw new IllegalStateException("Las dos implementaciones no normalizan igual");
+        }
+    }
+
+    @Benchmark
+    public String[] legacy() {
+        return Legacy.normalize(number, cvv, expiry);
+    }
+
+    @Benchmark
+    public CardInput parser() {
+        return CardInput.parse(number, cvv, expiry);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(CardInputBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    /** validateCardInput + normalizeExpiry previos de CardService, sin cambios. */
+    static final class Legacy {
+
+        static String[] normalize(String rawNumber, String rawCvv, String rawExpiry) {
+            String number = safe(rawNumber);
+            if (number.length() < 12 || number.length() > 19 || !number.chars().allMatch(Character::isDigit)) {
+                throw new IllegalArgumentException("Número de tarjeta inválido");
+            }
+            String cvv = safe(rawCvv);
+            if (!(cvv.length() == 3 || cvv.length() == 4) || !cvv.chars().allMatch(Character::isDigit)) {
+                throw new IllegalArgumentException("CVV inválido");
+            }
+            String expiry = safe(rawExpiry);
+            if (!isValidExpiry(expiry)) {
+                throw new IllegalArgumentException("Fecha de expiración inválida");
+            }
+            return new String[]{number, cvv, normalizeExpiry(expiry)};
+        }
+
+        static String normalizeExpiry(String raw) {
+            if (raw.matches("^\\d{4}-\\d{2}$")) {
+                try {
+                    YearMonth.parse(raw);
+                    return raw;
+                } catch (DateTimeParseException ignored) {
+                    throw new IllegalArgumentException("Fecha de expiración inválida");
+                }
+            }
+            if (raw.matches("^\\d{2}/\\d{2}$")) {
+                String[] parts = raw.split("/");
+                int mm = Integer.parseInt(parts[0]);
+                int yy = Integer.parseInt(parts[1]);
+                if (mm < 1 || mm > 12) throw new IllegalArgumentException("Mes de expiración inválido");
+                String normalized = String.format("%04d-%02d", 2000 + yy, mm);
+                try {
+                    YearMonth.parse(normalized);
+                    return normalized;
+                } catch (DateTimeParseException ignored) {
+                    throw new IllegalArgumentException("Fecha de expiración inválida");
+                }
+            }
+            throw new IllegalArgumentException("Formato de expiración no soportado (use MM/YY o YYYY-MM)");
+        }
+
+        static boolean isValidExpiry(String raw) {
+            if (raw == null) return false;
+            if (raw.matches("^\\d{4}-\\d{2}$")) {
+                try {
+                    YearMonth.parse(raw);
+                    return true;
+                } catch (DateTimeParseException ignored) {
+                    return false;
+                }
+            }
+            if (raw.matches("^\\d{2}/\\d{2}$")) {
+                String[] p = raw.split("/");
+                try {
+                    int mm = Integer.parseInt(p[0]);
+                    int yy = Integer.parseInt(p[1]);
+                    if (mm < 1 || mm > 12) return false;
+                    YearMonth.parse(String.format("%04d-%02d", 2000 + yy, mm));
+                    return true;
+                } catch (Exception ignored) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        static String safe(String s) {
+            return s == null ? "" : s.trim();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.challenge.tokenizacion_app.benchmark;
+
+import com.challenge.tokenizacion_app.security.crypto.AesGcmKeyRing;
+import com.challenge.tokenizacion_app.security.crypto.CardSecrets;
+import com.challenge.tokenizacion_app.security.crypto.SealedCardRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo por tarjeta de los dos formatos de almacenamiento de cvv + expiración:
+ * dos columnas {@code vN:}+Base64 (dos AES-GCM por escritura/lectura) contra el registro
+ * binario único de {@link SealedCardRecord} (uno, con el token como AAD).
+ * <p>
+ * {@code main} imprime además los bytes por tarjeta de cada formato antes de correr JMH.
+ * Ejecutar (tiempo por tarjeta y bytes asignados por op en {@code gc.alloc.rate.norm}):
+ * <pre>
+ * ./mvnw -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *      com.challenge.tokenizacion_app.benchmark.CardSecretsFormatBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CardSecretsFormatBenchmark {
+
+    private static final String KEY_B64 = "ymI5Oo2g2bXWS4FFW/okZI1bXTtvxSVQGXQVx9VhK+I=";
+    private static final String TOKEN = "6f1c2a8e-3d4b-4c5a-9e7f-0a1b2c3d4e5f";
+
+    private final CardSecrets secrets = new CardSecrets("123", "2028-12");
+
+    private String legacyCvv;
+    private String legacyExpiry;
+    private SealedCardRecord packed;
+
+    @Setup
+    public void setup() {
+        System.setProperty("AES_GCM_KEY_BASE64", KEY_B64);
+        legacyCvv = Legacy.sealCvv(secrets);
+        legacyExpiry = Legacy.sealExpiry(secrets);
+        packed = SealedCardRecord.seal(secrets, TOKEN);
+
+        if (!secrets.equals(Legacy.open(legacyCvv, legacyExpiry)) || !secrets.equals(packed.open(TOKEN))) {
+            throw new IllegalStateException("Los formatos no devuelven los mismos datos");
+        }
+    }
+
+    @Benchmark
+    public String[] writeLegacy() {
+        return new String[]{Legacy.sealCvv(secrets), Legacy.sealExpiry(secrets)};
+    }
+
+    @Benchmark
+    public SealedCardRecord writePacked() {
+        return SealedCardRecord.seal(secrets, TOKEN);
+    }
+
+    @Benchmark
+    public CardSecrets readLegacy() {
+        return Legacy.open(legacyCvv, legacyExpiry);
+    }
+
+    @Benchmark
+    public CardSecrets readPacked() {
+        return packed.open(TOKEN);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        System.setProperty("AES_GCM_KEY_BASE64", KEY_B64);
+        CardSecrets sample = new CardSecrets("123", "2028-12");
+        int legacyBytes = Legacy.sealCvv(sample).getBytes(StandardCharsets.US_ASCII).length
+                + Legacy.sealExpiry(sample).getBytes(StandardCharsets.US_ASCII).length;
+        int packedBytes = SealedCardRecord.seal(sample, TOKEN).length();
+        System.out.printf("Bytes por tarjeta: dos columnas Base64 = %d, registro empaquetado = %d%n",
+                legacyBytes, packedBytes);
+
+        Options opt = new OptionsBuilder()
+                .include(CardSecretsFormatBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    /** Formato previo: un valor {@code vN:}+Base64 por campo, como lo escribía el converter de texto. */
+    static final class Legacy {
+
+        static String sealCvv(CardSecrets s) {
+            return AesGcmKeyRing.instance().encrypt(s.cvv());
+        }
+
+        static String sealExpiry(CardSecrets s) {
+            return AesGcmKeyRing.instance().encrypt(s.expiryDate());
+        }
+
+        static CardSecrets open(String cvv, String expiry) {
+            AesGcmKeyRing ring = AesGcmKeyRing.instance();
+            return new CardSecrets(ring.decrypt(cvv), ring.decrypt(expiry));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.challenge.tokenizacion_app.benchmark;
+
+import com.challenge.tokenizacion_app.events.OrderFinalizedEvent;
+import com.challenge.tokenizacion_app.mail.OrderEmailTemplates;
+import com.challenge.tokenizacion_app.mail.template.RenderedMail;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render del correo de orden aprobada: construcción original (StringBuilder,
+ * {@code NumberFormat.getCurrencyInstance} por valor y dos {@code replaceAll} para el texto)
+ * contra las plantillas compiladas de {@link OrderEmailTemplates}, con 1, 50 y 500 ítems.
+ * <p>
+ * Ejecutar (tiempo por render y bytes asignados por op en {@code gc.alloc.rate.norm}):
+ * <pre>
+ * ./mvnw -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *      com.challenge.tokenizacion_app.benchmark.OrderEmailTemplateBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderEmailTemplateBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int items;
+
+    private OrderFinalizedEvent order;
+    private OrderEmailTemplates templates;
+
+    @Setup
+    public void setup() {
+        List<OrderFinalizedEvent.Item> lines = new ArrayList<>(items);
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < items; i++) {
+            BigDecimal price = BigDecimal.valueOf(19_900 + i * 250L, 0);
+            lines.add(new OrderFinalizedEvent.Item((long) i, "Producto <" + i + "> & accesorios", 1 + i % 3, price));
+            total = total.add(price.multiply(BigDecimal.valueOf(1 + i % 3)));
+        }
+        order = new OrderFinalizedEvent(42L, 7L, "cliente@local.test", "APPROVED", 1, total,
+                "Calle Falsa 123", List.copyOf(lines));
+        templates = new OrderEmailTemplates();
+
+        // Ambos caminos deben producir el mismo texto plano (salvo el escape de comillas)
+        String legacyText = Legacy.stripTags(Legacy.buildApprovedHtml(order)).replace("&amp;", "&")
+                .replace("&lt;", "<").replace("&gt;", ">");
+        if (!legacyText.equals(templates.approved(order).text())) {
+            throw new IllegalStateException("El texto plano difiere del original");
+        }
+    }
+
+    @Benchmark
+    public String[] legacy() {
+        String html = Legacy.buildApprovedHtml(order);
+        return new String[]{html, Legacy.stripTags(html)};
+    }
+
+    @Benchmark
+    public RenderedMail compiled() {
+        return templates.approved(order);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(OrderEmailTemplateBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    /** Copia fiel de la construcción previa en MailService, como línea base. */
+    static final class Legacy {
+        private static final Locale LOCALE_CO = new Locale("es", "CO");
+
+        static String buildApprovedHtml(OrderFinalizedEvent order) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<h2>¡Gracias por tu compra!</h2>");
+            sb.append("<p><b>Pedido #").append(order.orderId()).append("</b> aprobado.</p>");
+            if (order.deliveryAddress() != null) {
+                sb.append("<p>Dirección de entrega: ").append(escape(order.deliveryAddress())).append("</p>");
+            }
+            sb.append("<table border='1' cellpadding='6' cellspacing='0'>")
+                    .append("<thead><tr><th>Producto</th><th>Cantidad</th><th>Unitario</th><th>Subtotal</th></tr></thead><tbody>");
+            for (OrderFinalizedEvent.Item it : order.items()) {
+                String name = it.productName() != null ? it.productName() : "Producto";
+                sb.append("<tr>")
+                        .append("<td>").append(escape(name)).append("</td>")
+                        .append("<td>").append(it.quantity()).append("</td>")
+                        .append("<td>").append(fmt(it.unitPrice())).append("</td>")
+                        .append("<td>").append(fmt(it.subtotal())).append("</td>")
+                        .append("</tr>");
+            }
+            sb.append("</tbody></table>");
+            sb.append("<p><b>Total: ").append(fmt(order.total())).append("</b></p>");
+            return sb.toString();
+        }
+
+        private static String fmt(BigDecimal v) {
+            if (v == null) return "-";
+            return NumberFormat.getCurrencyInstance(LOCALE_CO).format(v);
+        }
+
+        private static String escape(String s) {
+            if (s == null) return "";
+            return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        }
+
+        static String stripTags(String html) {
+            return html.replaceAll("<[^>]*>", " ").replaceAll("\\s+", " ").trim();
+        }
+    }
+}
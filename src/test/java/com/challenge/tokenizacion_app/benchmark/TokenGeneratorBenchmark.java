@@ -0,0 +1,76 @@
+package com.challenge.tokenizacion_app.benchmark;
+
+import com.challenge.tokenizacion_app.security.token.FormatPreservingTokenGenerator;
+import com.challenge.tokenizacion_app.security.token.TokenGenerator;
+import com.challenge.tokenizacion_app.security.token.UuidTokenGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens por segundo con 1..64 hilos: {@code UUID.randomUUID()} (un SecureRandom compartido por
+ * todo el proceso) contra los generadores con DRBG por hilo.
+ * <p>
+ * {@code main} corre la misma medición con 1, 2, 4, 8, 16, 32 y 64 hilos; el throughput del
+ * legado deja de crecer en cuanto los hilos compiten por el SecureRandom común.
+ * <pre>
+ * ./mvnw -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *      com.challenge.tokenizacion_app.benchmark.TokenGeneratorBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenGeneratorBenchmark {
+
+    private static final String PAN = "4111111111111111";
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    private final TokenGenerator uuid = new UuidTokenGenerator();
+    private final TokenGenerator formatPreserving = new FormatPreservingTokenGenerator();
+
+    @Benchmark
+    public String legacyRandomUuid() {
+        return Legacy.generate();
+    }
+
+    @Benchmark
+    public String threadLocalUuid() {
+        return uuid.generate(PAN);
+    }
+
+    @Benchmark
+    public String formatPreserving() {
+        return formatPreserving.generate(PAN);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREADS) {
+            System.out.printf("=== %d hilo(s) ===%n", threads);
+            Options opt = new OptionsBuilder()
+                    .include(TokenGeneratorBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+
+    /** Generación previa de CardService. */
+    static final class Legacy {
+
+        static String generate() {
+            return UUID.randomUUID().toString();
+        }
+    }
+}
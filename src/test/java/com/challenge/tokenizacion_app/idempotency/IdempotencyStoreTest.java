@@ -0,0 +1,133 @@
+package com.challenge.tokenizacion_app.idempotency;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Replay, conflicto (409) y reutilización con otros parámetros (422) sobre la tabla real; y una
+ * acción aplicada nunca deja su llave IN_PROGRESS, aunque su respuesta no se pueda guardar.
+ * Una segunda instancia del store (sin L1 compartido) simula otra réplica sobre la misma DB.
+ */
+@SpringBootTest
+class IdempotencyStoreTest {
+
+    private static final String SCOPE = "test";
+
+    @Autowired IdempotencyStore store;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired ObjectMapper objectMapper;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private String key;
+
+    @BeforeEach
+    void newKey() {
+        key = UUID.randomUUID().toString();
+    }
+
+    @Test
+    void replayReturnsStoredResponseWithoutRunningAgain() {
+        ResponseEntity<?> first = store.execute(SCOPE, key, List.of(1, "a"), () -> created(Map.of("id", 7)));
+        ResponseEntity<?> second = store.execute(SCOPE, key, List.of(1, "a"), () -> created(Map.of("id", 8)));
+        ResponseEntity<?> otherInstance = otherInstance().execute(SCOPE, key, List.of(1, "a"), () -> created(Map.of("id", 9)));
+
+        assertEquals(1, calls.get());
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        for (ResponseEntity<?> replay : List.of(second, otherInstance)) {
+            assertEquals(HttpStatus.CREATED, replay.getStatusCode());
+            assertEquals("true", replay.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+            assertEquals(7, ((JsonNode) replay.getBody()).get("id").asInt());
+        }
+        assertEquals("COMPLETED", rowStatus());
+    }
+
+    @Test
+    void sameKeyWithOtherParametersIsRejected() {
+        store.execute(SCOPE, key, List.of(1, "a"), () -> created(Map.of("id", 7)));
+
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> store.execute(SCOPE, key, List.of(1, "b"), () -> created(Map.of("id", 8))));
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> otherInstance().execute(SCOPE, key, List.of(2, "a"), () -> created(Map.of("id", 9))));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void keyInProgressElsewhereIsConflict() {
+        // Huella real de (1, "a"), tomada de una llave ya completada
+        store.execute(SCOPE, key, List.of(1, "a"), () -> created(Map.of("id", 7)));
+        String fingerprint = jdbc.queryForObject("SELECT fingerprint FROM idempotency_keys WHERE idem_key = ?",
+                String.class, SCOPE + ":" + key);
+
+        String busy = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        jdbc.update("INSERT INTO idempotency_keys (idem_key, fingerprint, status, created_at, expires_at) VALUES (?, ?, ?, ?, ?)",
+                SCOPE + ":" + busy, fingerprint, "IN_PROGRESS", Timestamp.valueOf(now), Timestamp.valueOf(now.plusHours(1)));
+
+        assertThrows(IdempotencyConflictException.class,
+                () -> store.execute(SCOPE, busy, List.of(1, "a"), () -> created(Map.of("id", 8))));
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> store.execute(SCOPE, busy, List.of(1, "b"), () -> created(Map.of("id", 9))));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void failedActionReleasesKey() {
+        assertThrows(IllegalArgumentException.class, () -> store.execute(SCOPE, key, List.of(1), () -> {
+            calls.incrementAndGet();
+            throw new IllegalArgumentException("falla simulada");
+        }));
+        assertNull(rowStatus());
+
+        ResponseEntity<?> retry = store.execute(SCOPE, key, List.of(1), () -> created(Map.of("id", 7)));
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void unstorableResponseStillCompletesKey() throws Exception {
+        String huge = "x".repeat(10_000); // excede el máximo guardable
+        ResponseEntity<?> first = store.execute(SCOPE, key, List.of(1), () -> created(Map.of("blob", huge)));
+        assertEquals(huge, ((Map<?, ?>) first.getBody()).get("blob"));
+
+        assertEquals("COMPLETED", rowStatus());
+        ResponseEntity<?> replay = otherInstance().execute(SCOPE, key, List.of(1), () -> created(Map.of("id", 8)));
+        assertEquals(1, calls.get());
+        assertEquals(HttpStatus.CREATED, replay.getStatusCode());
+        assertEquals(objectMapper.readTree(IdempotencyStore.UNSTORED_BODY), replay.getBody());
+    }
+
+    private ResponseEntity<?> created(Object body) {
+        calls.incrementAndGet();
+        return ResponseEntity.status(HttpStatus.CREATED).body(body);
+    }
+
+    private String rowStatus() {
+        List<String> rows = jdbc.queryForList("SELECT status FROM idempotency_keys WHERE idem_key = ?",
+                String.class, SCOPE + ":" + key);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private IdempotencyStore otherInstance() {
+        return new IdempotencyStore(jdbc, objectMapper, new SimpleMeterRegistry(), 100,
+                Duration.ofHours(1), Duration.ofMinutes(2), Duration.ofSeconds(1), Duration.ofMinutes(10));
+    }
+}
@@ -0,0 +1,139 @@
+package com.challenge.tokenizacion_app.mail;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Envío en lotes contra un SMTP embebido (GreenMail, en lugar del MailHog de docker-compose):
+ * todos los correos llegan, se abren muchas menos sesiones que correos y las fallas
+ * transitorias se reintentan por lote.
+ */
+class MailDispatcherTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP.dynamicPort());
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private MailDispatcher dispatcher;
+
+    /** Cuenta las llamadas a send(MimeMessage...) (= sesiones SMTP) e inyecta fallas de conexión. */
+    static class CountingSender extends JavaMailSenderImpl {
+        final AtomicInteger sessions = new AtomicInteger();
+        final AtomicInteger failuresToInject = new AtomicInteger();
+
+        @Override
+        public void send(MimeMessage... mimeMessages) {
+            sessions.incrementAndGet();
+            if (failuresToInject.getAndDecrement() > 0) {
+                throw new MailSendException("Mail server connection failed (simulada)");
+            }
+            super.send(mimeMessages);
+        }
+    }
+
+    private CountingSender sender() {
+        CountingSender sender = new CountingSender();
+        sender.setHost("localhost");
+        sender.setPort(greenMail.getSmtp().getPort());
+        return sender;
+    }
+
+    private MailDispatcher dispatcher(CountingSender sender, int maxAttempts) {
+        dispatcher = new MailDispatcher(sender, registry, true, 1000, 1, 50,
+                Duration.ofMillis(100), maxAttempts, Duration.ofMillis(10));
+        dispatcher.start();
+        return dispatcher;
+    }
+
+    private static MimeMessage message(JavaMailSenderImpl sender, int i) throws MessagingException {
+        MimeMessage msg = sender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(msg, "UTF-8");
+        helper.setFrom("noreply@local.test");
+        helper.setTo("cliente" + i + "@local.test");
+        helper.setSubject("Pedido #" + i + " APROBADO");
+        helper.setText("<p>Pedido " + i + "</p>", true);
+        return msg;
+    }
+
+    private static List<CompletableFuture<Void>> submitAll(MailDispatcher d, JavaMailSenderImpl sender, int n)
+            throws MessagingException {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            futures.add(d.submit(message(sender, i)));
+        }
+        return futures;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) dispatcher.stop();
+    }
+
+    @Test
+    void sendsQueuedMessagesInBatchesOverFewSessions() throws Exception {
+        CountingSender sender = sender();
+        MailDispatcher d = dispatcher(sender, 3);
+
+        List<CompletableFuture<Void>> futures = submitAll(d, sender, 120);
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+        assertEquals(120, greenMail.getReceivedMessages().length);
+        assertTrue(sender.sessions.get() >= 3, "lotes de a lo sumo 50");
+        assertTrue(sender.sessions.get() < 20, "una sesión por lote, no por correo: " + sender.sessions.get());
+
+        DistributionSummary sizes = registry.get("mail.batch.size").summary();
+        assertEquals(120, (long) sizes.totalAmount());
+        assertTrue(sizes.max() > 1);
+        assertEquals(120, registry.get("mail.sent").counter().count());
+        assertEquals(0, d.backlog());
+    }
+
+    @Test
+    void transientFailureIsRetriedForTheWholeBatch() throws Exception {
+        CountingSender sender = sender();
+        sender.failuresToInject.set(1);
+        MailDispatcher d = dispatcher(sender, 3);
+
+        List<CompletableFuture<Void>> futures = submitAll(d, sender, 10);
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+        assertEquals(10, greenMail.getReceivedMessages().length);
+        assertTrue(registry.get("mail.batch.retries").counter().count() >= 1);
+        assertEquals(0, registry.get("mail.failed").counter().count());
+    }
+
+    @Test
+    void exhaustedRetriesFailTheFuture() throws Exception {
+        CountingSender sender = sender();
+        sender.failuresToInject.set(Integer.MAX_VALUE);
+        MailDispatcher d = dispatcher(sender, 2);
+
+        CompletableFuture<Void> future = d.submit(message(sender, 1));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(MailSendException.class, e.getCause());
+        assertEquals(2, sender.sessions.get());
+        assertEquals(1, registry.get("mail.failed").counter().count());
+        assertEquals(0, greenMail.getReceivedMessages().length);
+    }
+}
@@ -0,0 +1,169 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import com.challenge.tokenizacion_app.model.entity.Card;
+import com.challenge.tokenizacion_app.model.entity.User;
+import com.challenge.tokenizacion_app.repository.CardBatchRepository;
+import com.challenge.tokenizacion_app.repository.CardRepository;
+import com.challenge.tokenizacion_app.repository.UserRepository;
+import com.challenge.tokenizacion_app.security.ApiKeyAuthFilter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Cuenta operaciones AES-GCM por camino de lectura: listar 1.000 tarjetas (por el endpoint o
+ * cargando las entidades) no puede descifrar nada; solo {@link Card#revealSecrets()} lo hace,
+ * con una única operación para cvv y expiración.
+ */
+@SpringBootTest(properties = "tokenization.rejection-probability=0")
+@AutoConfigureMockMvc
+class CardDecryptionCountTest {
+
+    private static final int CARDS = 1_000;
+
+    @Autowired MockMvc mockMvc;
+    @Autowired ObjectMapper objectMapper;
+    @Autowired UserRepository userRepository;
+    @Autowired CardRepository cardRepository;
+    @Autowired CardBatchRepository cardBatchRepository;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired JdbcTemplate jdbcTemplate;
+
+    @Value("${security.api-key}")
+    String apiKey;
+
+    private Long userId;
+
+    @BeforeEach
+    void seed() {
+        String suffix = UUID.randomUUID().toString();
+        User user = userRepository.save(User.builder()
+                .name("Cliente " + suffix)
+                .email(suffix + "@local.test")
+                .phone(suffix)
+                .address("Calle 1")
+                .build());
+        userId = user.getId();
+
+        List<Card> cards = new ArrayList<>(CARDS);
+        for (int i = 0; i < CARDS; i++) {
+            String token = UUID.randomUUID().toString();
+            cards.add(Card.builder()
+                    .token(token)
+                    .maskedNumber("**** **** **** " + String.format("%04d", i))
+                    .secrets(SealedCardRecord.seal(new CardSecrets("123", "2030-12"), token))
+                    .user(user)
+                    .build());
+        }
+        cardBatchRepository.insertAll(cards);
+    }
+
+    @Test
+    void listingCardsEndpointDoesNoDecryption() throws Exception {
+        AesGcmKeyRing ring = AesGcmKeyRing.instance();
+        long before = ring.decryptions();
+
+        int seen = 0;
+        String cursor = null;
+        do {
+            MockHttpServletRequestBuilder request = get("/api/cards/user/{userId}", userId)
+                    .header(ApiKeyAuthFilter.HEADER, apiKey)
+                    .param("limit", "200");
+            if (cursor != null) request.param("cursor", cursor);
+            String body = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode page = objectMapper.readTree(body);
+            seen += page.get("items").size();
+            cursor = page.hasNonNull("nextCursor") ? page.get("nextCursor").asText() : null;
+        } while (cursor != null);
+
+        assertEquals(CARDS, seen);
+        assertEquals(0, ring.decryptions() - before, "GET /api/cards/user/{id} descifró columnas");
+    }
+
+    @Test
+    void loadingCardEntitiesDecryptsOnlyOnReveal() {
+        AesGcmKeyRing ring = AesGcmKeyRing.instance();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        long decryptionsBefore = ring.decryptions();
+        long encryptionsBefore = ring.encryptions();
+
+        // Cargar + flush (dirty checking) sin tocar el registro: ni descifra ni re-cifra
+        List<Card> cards = tx.execute(s -> {
+            List<Card> loaded = cardRepository.findByUserId(userId);
+            loaded.forEach(Card::getToken);
+            cardRepository.flush();
+            return loaded;
+        });
+
+        assertEquals(CARDS, cards.size());
+        assertEquals(0, ring.decryptions() - decryptionsBefore);
+        assertEquals(0, ring.encryptions() - encryptionsBefore);
+
+        CardSecrets secrets = cards.get(0).revealSecrets();
+        assertEquals("123", secrets.cvv());
+        assertEquals("2030-12", secrets.expiryDate());
+        assertEquals(1, ring.decryptions() - decryptionsBefore, "un solo registro para ambos campos");
+    }
+
+    @Test
+    void legacyRowIsMigratedToPackedRecordOnReveal() {
+        AesGcmKeyRing ring = AesGcmKeyRing.instance();
+        String token = UUID.randomUUID().toString();
+        jdbcTemplate.update("INSERT INTO cards (token, masked_number, cvv, expiry_date, user_id) VALUES (?, ?, ?, ?, ?)",
+                token, "**** **** **** 9999", ring.encrypt("456"), ring.encrypt("2031-01"), userId);
+
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        CardSecrets revealed = tx.execute(s -> cardRepository.findByToken(token).orElseThrow().revealSecrets());
+        assertEquals(new CardSecrets("456", "2031-01"), revealed);
+
+        // Tras el commit la fila quedó en el formato nuevo y sin las columnas viejas
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT cvv, expiry_date, secrets FROM cards WHERE token = ?", token);
+        assertNull(row.get("cvv"));
+        assertNull(row.get("expiry_date"));
+        SealedCardRecord migrated = SealedCardRecord.fromDatabase((byte[]) row.get("secrets"));
+        assertEquals(revealed, migrated.open(token));
+    }
+
+    @Test
+    void tokenizingEncryptsOnceAndDecryptsNothing() throws Exception {
+        AesGcmKeyRing ring = AesGcmKeyRing.instance();
+        long decryptionsBefore = ring.decryptions();
+        long encryptionsBefore = ring.encryptions();
+
+        mockMvc.perform(post("/api/cards/tokenize")
+                        .header(ApiKeyAuthFilter.HEADER, apiKey)
+                        .param("userId", userId.toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"number":"4111111111111111","cvv":"123","expiryDate":"2030-12"}
+                                """))
+                .andExpect(status().isOk());
+
+        assertEquals(1, ring.encryptions() - encryptionsBefore);
+        assertEquals(0, ring.decryptions() - decryptionsBefore);
+    }
+}
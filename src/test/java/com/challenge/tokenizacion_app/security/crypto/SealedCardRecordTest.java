@@ -0,0 +1,50 @@
+package com.challenge.tokenizacion_app.security.crypto;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Formato del registro empaquetado: ida y vuelta, AAD y tamaño frente a las dos columnas Base64. */
+class SealedCardRecordTest {
+
+    @BeforeAll
+    static void key() {
+        if (System.getenv("AES_GCM_KEY_BASE64") == null) {
+            System.setProperty("AES_GCM_KEY_BASE64", "ymI5Oo2g2bXWS4FFW/okZI1bXTtvxSVQGXQVx9VhK+I=");
+        }
+    }
+
+    @Test
+    void roundTrip() {
+        CardSecrets secrets = new CardSecrets("1234", "2029-07");
+        SealedCardRecord sealed = SealedCardRecord.seal(secrets, "tok-1");
+        assertEquals(secrets, SealedCardRecord.fromDatabase(sealed.toBytes()).open("tok-1"));
+    }
+
+    @Test
+    void recordIsBoundToItsCard() {
+        SealedCardRecord sealed = SealedCardRecord.seal(new CardSecrets("123", "2030-12"), "tok-a");
+        assertThrows(IllegalStateException.class, () -> sealed.open("tok-b"));
+    }
+
+    @Test
+    void tamperedHeaderIsRejected() {
+        byte[] bytes = SealedCardRecord.seal(new CardSecrets("123", "2030-12"), "tok-a").toBytes();
+        bytes[0] = 2;
+        assertThrows(IllegalStateException.class, () -> SealedCardRecord.fromDatabase(bytes).open("tok-a"));
+    }
+
+    @Test
+    void packedRecordIsLessThanHalfOfTwoTextColumns() {
+        AesGcmKeyRing ring = AesGcmKeyRing.instance();
+        int legacy = ring.encrypt("123").getBytes(StandardCharsets.US_ASCII).length
+                + ring.encrypt("2030-12").getBytes(StandardCharsets.US_ASCII).length;
+        int packed = SealedCardRecord.seal(new CardSecrets("123", "2030-12"), "tok").length();
+
+        assertEquals(98, legacy);
+        assertEquals(42, packed);
+    }
+}
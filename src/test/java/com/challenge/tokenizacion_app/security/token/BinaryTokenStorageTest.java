@@ -0,0 +1,113 @@
+package com.challenge.tokenizacion_app.security.token;
+
+import com.challenge.tokenizacion_app.cache.CardTokenCache;
+import com.challenge.tokenizacion_app.dto.CardDTO;
+import com.challenge.tokenizacion_app.model.entity.User;
+import com.challenge.tokenizacion_app.repository.CardBatchRepository;
+import com.challenge.tokenizacion_app.repository.CardRepository;
+import com.challenge.tokenizacion_app.repository.UserRepository;
+import com.challenge.tokenizacion_app.security.crypto.CardSecrets;
+import com.challenge.tokenizacion_app.security.crypto.SealedCardRecord;
+import com.challenge.tokenizacion_app.service.CardService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Con storage=BINARY la tarjeta se guarda solo con sus 16 bytes ({@code cards.token} NULL) y todo lo
+ * que expone o usa el texto del token lo deriva de la clave: respuesta, listado, checkout y el AAD
+ * del registro cifrado. Las filas de texto anteriores se pasan a binario al arrancar.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:binarytokens;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+        "tokenization.token.storage=BINARY",
+        "tokenization.rejection-probability=0"
+})
+class BinaryTokenStorageTest {
+
+    @Autowired CardService cardService;
+    @Autowired CardTokenCache cardTokenCache;
+    @Autowired TokenGenerator tokenGenerator;
+    @Autowired CardRepository cardRepository;
+    @Autowired CardBatchRepository cardBatchRepository;
+    @Autowired UserRepository userRepository;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired PlatformTransactionManager transactionManager;
+
+    private Long userId;
+
+    @BeforeEach
+    void seed() {
+        String suffix = UUID.randomUUID().toString();
+        userId = userRepository.save(User.builder()
+                .name("Cliente " + suffix)
+                .email(suffix + "@local.test")
+                .phone(suffix)
+                .address("Calle 1")
+                .build()).getId();
+    }
+
+    @Test
+    void storesOnlyBinaryKeyAndDerivesText() {
+        CardDTO card = cardService.tokenizeCard(userId, CardDTO.builder()
+                .number("4111111111111111").cvv("123").expiryDate("2030-12").build());
+
+        Map<String, Object> row = jdbc.queryForMap("SELECT token, token_key FROM cards WHERE id = ?", card.getId());
+        assertNull(row.get("token"));
+        assertArrayEquals(CardTokenIssuer.keyOf(card.getToken()), (byte[]) row.get("token_key"));
+
+        cardTokenCache.invalidate(card.getToken());
+        assertEquals(card.getId(), cardTokenCache.resolve(card.getToken()).orElseThrow().cardId());
+        assertEquals(card.getToken(), cardService.getCardsByUser(userId, null, 10).getItems().get(0).getToken());
+
+        CardSecrets secrets = new TransactionTemplate(transactionManager)
+                .execute(s -> cardRepository.findById(card.getId()).orElseThrow().revealSecrets());
+        assertEquals(new CardSecrets("123", "2030-12"), secrets);
+
+        assertTrue(cardTokenCache.resolve(UUID.randomUUID().toString()).isEmpty());
+    }
+
+    @Test
+    void backfillMovesCanonicalTextTokensToKeys() {
+        String canonical = UUID.randomUUID().toString();
+        String upper = UUID.randomUUID().toString().toUpperCase();
+        Long movedId = insertTextRow(canonical);
+        Long keptId = insertTextRow(upper);
+
+        CardTokenIssuer fresh = new CardTokenIssuer(tokenGenerator, cardRepository, CardTokenIssuer.Storage.BINARY);
+        assertTrue(fresh.hasLegacyTextRows());
+        new CardTokenKeyBackfill(fresh, cardBatchRepository).run(null);
+        assertFalse(fresh.hasLegacyTextRows());
+
+        Map<String, Object> moved = jdbc.queryForMap("SELECT token, token_key FROM cards WHERE id = ?", movedId);
+        assertNull(moved.get("token"));
+        assertArrayEquals(CardTokenIssuer.keyOf(canonical), (byte[]) moved.get("token_key"));
+        // El texto derivado sigue abriendo el registro sellado con el token original
+        CardSecrets secrets = new TransactionTemplate(transactionManager)
+                .execute(s -> cardRepository.findById(movedId).orElseThrow().revealSecrets());
+        assertEquals(new CardSecrets("456", "2031-01"), secrets);
+        assertEquals(movedId, cardTokenCache.resolve(canonical).orElseThrow().cardId());
+
+        // En mayúsculas el texto derivado no coincidiría con el AAD: se deja como texto
+        Map<String, Object> kept = jdbc.queryForMap("SELECT token, token_key FROM cards WHERE id = ?", keptId);
+        assertEquals(upper, kept.get("token"));
+        assertNull(kept.get("token_key"));
+        assertEquals(keptId, cardTokenCache.resolve(upper).orElseThrow().cardId());
+    }
+
+    private Long insertTextRow(String token) {
+        jdbc.update("INSERT INTO cards (token, masked_number, secrets, user_id) VALUES (?, ?, ?, ?)",
+                token, "**** **** **** 9999",
+                SealedCardRecord.seal(new CardSecrets("456", "2031-01"), token).toBytes(), userId);
+        return jdbc.queryForObject("SELECT id FROM cards WHERE token = ?", Long.class, token);
+    }
+}
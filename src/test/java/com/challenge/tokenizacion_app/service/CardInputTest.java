@@ -0,0 +1,52 @@
+package com.challenge.tokenizacion_app.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Reglas de CardInput: dígitos, largo, Luhn, CVV y los dos formatos de expiración. */
+class CardInputTest {
+
+    @Test
+    void normalizesBothExpiryFormats() {
+        assertEquals("2028-09", CardInput.parse("4111111111111111", "123", "09/28").expiryDate());
+        assertEquals("2028-09", CardInput.parse("4111111111111111", "123", "2028-09").expiryDate());
+    }
+
+    @Test
+    void trimsLikeBefore() {
+        CardInput input = CardInput.parse(" 5500000000000004 ", " 1234", "12/30 ");
+        assertEquals("5500000000000004", input.number());
+        assertEquals("1234", input.cvv());
+        assertEquals("2030-12", input.expiryDate());
+        assertEquals("0004", input.last4());
+    }
+
+    @Test
+    void rejectsLuhnFailure() {
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111111111111112", "123", "09/28"));
+    }
+
+    @Test
+    void rejectsBadNumbers() {
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("411111111111", "123", "09/28")); // Luhn
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("42424242424", "123", "09/28"));  // corto
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111-1111-1111-1111", "123", "09/28"));
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse(null, "123", "09/28"));
+    }
+
+    @Test
+    void rejectsBadCvvAndExpiry() {
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111111111111111", "12", "09/28"));
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111111111111111", "12a", "09/28"));
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111111111111111", "123", "13/28"));
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111111111111111", "123", "2028-00"));
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111111111111111", "123", "20-01"));
+        assertThrows(IllegalArgumentException.class, () -> CardInput.parse("4111111111111111", "123", "2028/09"));
+    }
+
+    @Test
+    void toStringHidesCardData() {
+        assertFalse(CardInput.parse("4111111111111111", "123", "09/28").toString().contains("4111"));
+    }
+}
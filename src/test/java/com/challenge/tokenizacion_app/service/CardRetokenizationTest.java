@@ -0,0 +1,131 @@
+package com.challenge.tokenizacion_app.service;
+
+import com.challenge.tokenizacion_app.dto.BatchTokenizeResultDTO;
+import com.challenge.tokenizacion_app.dto.CardDTO;
+import com.challenge.tokenizacion_app.dto.TokenizeCardRequest;
+import com.challenge.tokenizacion_app.model.entity.User;
+import com.challenge.tokenizacion_app.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Re-tokenizar la misma tarjeta para el mismo usuario devuelve siempre el mismo token y deja
+ * una sola fila: en llamadas sucesivas, dentro de un lote, con rechazo configurado y con
+ * peticiones simultáneas (índice único (user_id, pan_fingerprint)).
+ */
+@SpringBootTest(properties = "tokenization.rejection-probability=0")
+class CardRetokenizationTest {
+
+    private static final String PAN = "4111111111111111";
+    private static final String OTHER_PAN = "5555555555554444";
+
+    @Autowired CardService cardService;
+    @Autowired UserRepository userRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+
+    private Long userId;
+
+    @BeforeEach
+    void seed() {
+        String suffix = UUID.randomUUID().toString();
+        userId = userRepository.save(User.builder()
+                .name("Cliente " + suffix)
+                .email(suffix + "@local.test")
+                .phone(suffix)
+                .address("Calle 1")
+                .build()).getId();
+    }
+
+    @Test
+    void retokenizingReturnsSameToken() {
+        CardDTO first = cardService.tokenizeCard(userId, card(PAN));
+        CardDTO second = cardService.tokenizeCard(userId, card(PAN));
+
+        assertEquals(first.getToken(), second.getToken());
+        assertEquals(first.getId(), second.getId());
+        assertEquals(1, cardCount());
+    }
+
+    @Test
+    void duplicatesInsideOneBatchShareToken() {
+        CardDTO existing = cardService.tokenizeCard(userId, card(PAN));
+
+        List<BatchTokenizeResultDTO> results = cardService.tokenizeBatch(List.of(
+                request(OTHER_PAN), request(PAN), request(OTHER_PAN), request(PAN)));
+
+        assertTrue(results.stream().allMatch(r -> BatchTokenizeResultDTO.TOKENIZED.equals(r.getStatus())));
+        assertEquals(existing.getToken(), results.get(1).getToken());
+        assertEquals(existing.getToken(), results.get(3).getToken());
+        assertEquals(results.get(0).getToken(), results.get(2).getToken());
+        assertNotEquals(existing.getToken(), results.get(0).getToken());
+        assertEquals(2, cardCount());
+    }
+
+    @Test
+    void knownCardIsReturnedBeforeRejection() {
+        CardDTO existing = cardService.tokenizeCard(userId, card(PAN));
+        cardService.setRejectionProbability(1.0);
+        try {
+            assertEquals(existing.getToken(), cardService.tokenizeCard(userId, card(PAN)).getToken());
+
+            List<BatchTokenizeResultDTO> results = cardService.tokenizeBatch(List.of(request(PAN), request(OTHER_PAN)));
+            assertEquals(BatchTokenizeResultDTO.TOKENIZED, results.get(0).getStatus());
+            assertEquals(existing.getToken(), results.get(0).getToken());
+            assertEquals(BatchTokenizeResultDTO.REJECTED, results.get(1).getStatus());
+        } finally {
+            cardService.setRejectionProbability(0);
+        }
+        assertEquals(1, cardCount());
+    }
+
+    @Test
+    void concurrentTokenizationsConvergeOnOneToken() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> tokens = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                boolean batch = i % 2 == 0;
+                tokens.add(pool.submit(() -> {
+                    start.await();
+                    return batch
+                            ? cardService.tokenizeBatch(List.of(request(PAN))).get(0).getToken()
+                            : cardService.tokenizeCard(userId, card(PAN)).getToken();
+                }));
+            }
+            start.countDown();
+
+            Set<String> distinct = ConcurrentHashMap.newKeySet();
+            for (Future<String> f : tokens) distinct.add(f.get(30, TimeUnit.SECONDS));
+            assertEquals(1, distinct.size(), () -> "tokens distintos: " + distinct);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, cardCount());
+    }
+
+    private CardDTO card(String number) {
+        return CardDTO.builder().number(number).cvv("123").expiryDate("2030-12").build();
+    }
+
+    private TokenizeCardRequest request(String number) {
+        return new TokenizeCardRequest(userId, number, "123", "2030-12");
+    }
+
+    private int cardCount() {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cards WHERE user_id = ?", Integer.class, userId);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,178 @@
+package com.challenge.tokenizacion_app.service;
+
+import com.challenge.tokenizacion_app.model.entity.Card;
+import com.challenge.tokenizacion_app.model.entity.Product;
+import com.challenge.tokenizacion_app.model.entity.User;
+import com.challenge.tokenizacion_app.payment.PaymentGateway;
+import com.challenge.tokenizacion_app.payment.PaymentOutcome;
+import com.challenge.tokenizacion_app.payment.PaymentResult;
+import com.challenge.tokenizacion_app.repository.CardBatchRepository;
+import com.challenge.tokenizacion_app.repository.ProductRepository;
+import com.challenge.tokenizacion_app.repository.UserRepository;
+import com.challenge.tokenizacion_app.security.crypto.CardSecrets;
+import com.challenge.tokenizacion_app.security.crypto.SealedCardRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * Carreras entre el barrido de PENDING vencidas y un cobro que se aprueba tarde: ninguna orden
+ * REJECTED puede quedar con la tarjeta cobrada, y una orden con un cobro en curso no se vence.
+ * Con {@code orders.pending-timeout=0s} toda orden es candidata al barrido.
+ */
+@SpringBootTest(properties = {
+        "orders.sweep.enabled=false",
+        "orders.pending-timeout=0s",
+        "payment.max-attempts=1",
+        "tokenization.rejection-probability=0"
+})
+class OrderPaymentRaceTest {
+
+    private static final int STOCK = 10;
+
+    @Autowired OrderService orderService;
+    @Autowired PendingOrderSweeper sweeper;
+    @Autowired UserRepository userRepository;
+    @Autowired ProductRepository productRepository;
+    @Autowired CardBatchRepository cardBatchRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+
+    @MockitoBean PaymentGateway gateway;
+
+    private Long userId;
+    private String cardToken;
+    private Long productId;
+
+    @BeforeEach
+    void seed() {
+        String suffix = UUID.randomUUID().toString();
+        User user = userRepository.save(User.builder()
+                .name("Cliente " + suffix)
+                .email(suffix + "@local.test")
+                .phone(suffix)
+                .address("Calle 1")
+                .build());
+        userId = user.getId();
+
+        cardToken = UUID.randomUUID().toString();
+        cardBatchRepository.insertAll(List.of(Card.builder()
+                .token(cardToken)
+                .maskedNumber("**** **** **** 1111")
+                .secrets(SealedCardRecord.seal(new CardSecrets("123", "2030-12"), cardToken))
+                .user(user)
+                .build()));
+
+        productId = productRepository.save(Product.builder()
+                .name("Producto " + suffix)
+                .price(new BigDecimal("10.00"))
+                .stock(STOCK)
+                .build()).getId();
+    }
+
+    @Test
+    void lateApprovalAfterSweepIsRefunded() throws Exception {
+        when(gateway.charge(any())).thenReturn(PaymentResult.approved("REF-1"));
+        OrderService.PendingOrder pending = orderService.reserve(userId, cardToken, "Calle 1", Map.of(productId, 2));
+        Long orderId = pending.orderId();
+
+        // El cobro se aprueba, pero la confirmación llega después del barrido
+        PaymentOutcome outcome = orderService.pay(pending);
+        assertTrue(outcome.approved());
+        assertEquals("CHARGING", paymentState(orderId));
+
+        Thread.sleep(20);
+        sweeper.sweep();
+
+        assertEquals("REJECTED", status(orderId));
+        assertEquals("VOIDED", paymentState(orderId));
+        assertEquals(STOCK, stock());
+        verify(gateway).refund(eq(orderId), isNull());
+
+        assertThrows(IllegalStateException.class, () -> orderService.confirm(pending, outcome));
+        verify(gateway).refund(orderId, "REF-1");
+        assertEquals("REJECTED", status(orderId));
+        assertEquals(STOCK, stock());
+    }
+
+    @Test
+    void chargeStartedAfterCutoffIsNotExpired() {
+        when(gateway.charge(any())).thenReturn(PaymentResult.approved("REF-2"));
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(1);
+        OrderService.PendingOrder pending = orderService.reserve(userId, cardToken, "Calle 1", Map.of(productId, 1));
+        Long orderId = pending.orderId();
+
+        PaymentOutcome outcome = orderService.pay(pending);
+        assertFalse(orderService.expire(orderId, cutoff), "venció una orden con el cobro en curso");
+        assertEquals("PENDING", status(orderId));
+
+        assertEquals("APPROVED", orderService.confirm(pending, outcome).getStatus());
+        assertFalse(orderService.expire(orderId), "venció una orden APPROVED");
+        assertEquals("APPROVED", status(orderId));
+        assertEquals("APPROVED", paymentState(orderId));
+        assertEquals(STOCK - 1, stock());
+        verify(gateway, never()).refund(eq(orderId), any());
+    }
+
+    @Test
+    void expiredOrderIsNeverCharged() throws Exception {
+        OrderService.PendingOrder pending = orderService.reserve(userId, cardToken, "Calle 1", Map.of(productId, 3));
+        Long orderId = pending.orderId();
+
+        Thread.sleep(20);
+        sweeper.sweep();
+        assertEquals("REJECTED", status(orderId));
+        assertEquals("NONE", paymentState(orderId));
+        assertEquals(STOCK, stock());
+
+        assertFalse(orderService.pay(pending).approved());
+        verify(gateway, never()).charge(any());
+        verify(gateway, never()).refund(eq(orderId), any());
+    }
+
+    @Test
+    void failedRefundIsRetriedBySweeper() throws Exception {
+        when(gateway.charge(any())).thenReturn(PaymentResult.approved("REF-3"));
+        OrderService.PendingOrder pending = orderService.reserve(userId, cardToken, "Calle 1", Map.of(productId, 1));
+        Long orderId = pending.orderId();
+        PaymentOutcome outcome = orderService.pay(pending);
+        assertTrue(orderService.expire(orderId));
+
+        // La pasarela no responde al devolver la aprobación tardía: queda VOID_PENDING con su referencia
+        doThrow(new IllegalStateException("pasarela caída (simulada)")).when(gateway).refund(anyLong(), any());
+        assertThrows(IllegalStateException.class, () -> orderService.confirm(pending, outcome));
+        assertEquals("VOID_PENDING", paymentState(orderId));
+
+        doNothing().when(gateway).refund(anyLong(), any());
+        sweeper.sweep();
+        assertEquals("VOIDED", paymentState(orderId));
+        verify(gateway, atLeast(2)).refund(orderId, "REF-3");
+    }
+
+    private String status(Long orderId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM orders WHERE id = ?", String.class, orderId);
+    }
+
+    private String paymentState(Long orderId) {
+        return jdbcTemplate.queryForObject("SELECT payment_state FROM orders WHERE id = ?", String.class, orderId);
+    }
+
+    private int stock() {
+        return productRepository.findById(productId).orElseThrow().getStock();
+    }
+}